@@ -0,0 +1,190 @@
+package com.bignerdranch.android.remindme;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A list of its own that the list benchmarks put over the content of the Activity,
+ * so the Reminders on the device are not touched. It is set up like MyListFragment,
+ * with a map renderer and a MapViewPool, and records the time between frames.
+ * Everything but reminders runs on the main thread.
+ */
+class BenchmarkList {
+
+    static final long FRAME_NANOS = 16666667;
+
+    final RecyclerView recyclerView;
+    final MapSnapshotLoader loader;
+    final MapViewPool pool;
+    final ArrayList<Long> frames = new ArrayList<>();
+
+    private FrameLayout root;
+    private MyRecyclerAdapter adapter;
+    private boolean recording;
+
+    /**
+     * @param count the number of Reminders.
+     * @param columns the number of Reminders in a column of the grid they are placed in.
+     * @return Reminders about 200 meters apart, with their maps folded.
+     */
+    static ArrayList<Reminder> reminders(int count, int columns) {
+        ArrayList<Reminder> reminders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Reminder r = new Reminder(i + 1, 59.30 + (i % columns) * 0.002, 18.00 + (i / columns) * 0.002, 100);
+            r.setStrings("Reminder " + i, "Place " + i, new ArrayList<String>());
+            reminders.add(r);
+        }
+        return reminders;
+    }
+
+    /**
+     * @param reminders the Reminders of the list.
+     * @return a pager that reads them, for a MyRecyclerAdapter.
+     */
+    static ReminderPager pager(List<Reminder> reminders) {
+        return new ReminderPager(new ListSource(reminders));
+    }
+
+    /**
+     * Adds the list to the Activity, without an adapter.
+     * @param activity the Activity of the benchmark.
+     */
+    BenchmarkList(Activity activity) {
+        root = new FrameLayout(activity);
+        root.setBackgroundColor(Color.WHITE);
+
+        FrameLayout rendererContainer = new FrameLayout(activity);
+        rendererContainer.setVisibility(View.INVISIBLE);
+        root.addView(rendererContainer, new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT,
+                (int) (180 * activity.getResources().getDisplayMetrics().density)));
+
+        loader = new MapSnapshotLoader(activity, rendererContainer);
+        loader.onCreate(null);
+        loader.onResume();
+        pool = new MapViewPool(activity);
+        pool.onResume();
+
+        recyclerView = new RecyclerView(activity);
+        recyclerView.setLayoutManager(new LinearLayoutManager(activity));
+        recyclerView.setHasFixedSize(true);
+        root.addView(recyclerView, new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+
+        activity.addContentView(root, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+    }
+
+    /**
+     * @param adapter the adapter, made with loader and pool.
+     */
+    void setAdapter(MyRecyclerAdapter adapter) {
+        this.adapter = adapter;
+        recyclerView.setAdapter(adapter);
+    }
+
+    void startRecording() {
+        recording = true;
+        Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+            private long last;
+
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                if (!recording) {
+                    return;
+                }
+                if (last != 0) {
+                    frames.add(frameTimeNanos - last);
+                }
+                last = frameTimeNanos;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        });
+    }
+
+    void stopRecording() {
+        recording = false;
+    }
+
+    /**
+     * @return the number of recorded frames that took longer than at 60 fps.
+     */
+    long slowFrames() {
+        long slow = 0;
+        for (long frame : frames) {
+            if (frame > FRAME_NANOS) {
+                slow++;
+            }
+        }
+        return slow;
+    }
+
+    /**
+     * Releases the maps and takes the list off the Activity.
+     */
+    void tearDown() {
+        recording = false;
+        if (adapter != null) {
+            adapter.releaseLiveMaps();
+        }
+        pool.onDestroy();
+        loader.onDestroy();
+        ((ViewGroup) root.getParent()).removeView(root);
+    }
+
+    private static class ListSource implements ReminderPager.Source {
+        private List<Reminder> reminders;
+
+        ListSource(List<Reminder> reminders) {
+            this.reminders = reminders;
+        }
+
+        @Override
+        public int getReminderCount() {
+            return reminders.size();
+        }
+
+        @Override
+        public List<Reminder> getReminders(int from, int to) {
+            return new ArrayList<>(reminders.subList(from, to));
+        }
+    }
+
+    /**
+     * The rows of a benchmark are not edited.
+     */
+    static class NoInput implements MyRecyclerAdapter.UserInputDelegate {
+        @Override
+        public void pickNewPlace(MyRecyclerAdapter.ReminderHolder holder) {
+        }
+
+        @Override
+        public void editText(MyRecyclerAdapter.ReminderHolder r) {
+        }
+
+        @Override
+        public void editRadius(MyRecyclerAdapter.ReminderHolder r) {
+        }
+
+        @Override
+        public void removeReminder(Reminder r) {
+        }
+
+        @Override
+        public void notifyActivity() {
+        }
+
+        @Override
+        public void setButtonVisibility() {
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.bignerdranch.android.remindme;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.location.Location;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the time it takes a location fix to reach its receiver, through a
+ * sendBroadcast with the Location parcelled into the Intent as the service
+ * used to do, and through an EventChannel whose listener posts to the receiving thread.
+ * The app dispatches that way now: ReminderRepository posts the ids of TRIGGERED
+ * to the main thread, and CurrentLocationService posts the changes of the repository
+ * to the trigger thread. Both are received on the same background thread.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LocationDispatchBenchmark {
+
+    private static final String TAG = "LocationDispatch";
+    private static final String ACTION = "com.bignerdranch.android.remindme.BENCHMARK";
+    private static final int FIXES = 200;
+
+    @Test
+    public void benchmark_channelIsFasterThanBroadcast() throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+
+        try {
+            long broadcast = broadcastNanos(context, new Handler(thread.getLooper()));
+            long channel = channelNanos(new Handler(thread.getLooper()));
+
+            Log.i(TAG, String.format("broadcast: %d ns/fix, channel: %d ns/fix", broadcast, channel));
+            assertTrue("the channel is slower than a broadcast", channel < broadcast);
+
+        } finally {
+            thread.quit();
+        }
+    }
+
+    /**
+     * Sends one fix at a time and waits for it, so the latency is measured,
+     * not the throughput of the queue.
+     */
+    private long broadcastNanos(Context context, Handler handler) throws InterruptedException {
+        final CountDownLatch[] received = new CountDownLatch[1];
+
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context c, Intent intent) {
+                Location location = intent.getParcelableExtra("location");
+                if (location != null) {
+                    received[0].countDown();
+                }
+            }
+        };
+        context.registerReceiver(receiver, new IntentFilter(ACTION), null, handler);
+
+        try {
+            long total = 0;
+
+            for (int i = 0; i < FIXES; i++) {
+                received[0] = new CountDownLatch(1);
+                long start = SystemClock.elapsedRealtimeNanos();
+
+                Intent intent = new Intent(ACTION);
+                intent.setPackage(context.getPackageName());
+                intent.putExtra("location", fix(i));
+                context.sendBroadcast(intent);
+
+                assertTrue(received[0].await(5, TimeUnit.SECONDS));
+                total += SystemClock.elapsedRealtimeNanos() - start;
+            }
+            return total / FIXES;
+
+        } finally {
+            context.unregisterReceiver(receiver);
+        }
+    }
+
+    private long channelNanos(final Handler handler) throws InterruptedException {
+        EventChannel<Location> channel = new EventChannel<>();
+        final CountDownLatch[] received = new CountDownLatch[1];
+
+        channel.subscribe(new EventChannel.Listener<Location>() {
+            @Override
+            public void onEvent(Location location) {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        received[0].countDown();
+                    }
+                });
+            }
+        });
+
+        long total = 0;
+
+        for (int i = 0; i < FIXES; i++) {
+            received[0] = new CountDownLatch(1);
+            long start = SystemClock.elapsedRealtimeNanos();
+
+            channel.publish(fix(i));
+
+            assertTrue(received[0].await(5, TimeUnit.SECONDS));
+            total += SystemClock.elapsedRealtimeNanos() - start;
+        }
+        return total / FIXES;
+    }
+
+    private static Location fix(int i) {
+        Location location = new Location("gps");
+        location.setLatitude(59.3293 + i * 0.0001);
+        location.setLongitude(18.0686);
+        location.setTime(System.currentTimeMillis());
+        return location;
+    }
+}
@@ -0,0 +1,156 @@
+package com.bignerdranch.android.remindme;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.os.Build;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Flings a list of 5,000 Reminders up and down, and measures the time spent
+ * in onBindViewHolder, the time between frames and the number of garbage
+ * collections while flinging.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ReminderBindBenchmark {
+
+    private static final String TAG = "ReminderBind";
+    private static final int REMINDERS = 5000;
+    private static final int FLINGS = 20;
+
+    @Rule
+    public ActivityTestRule<AppActivity> rule = new ActivityTestRule<>(AppActivity.class);
+
+    private BenchmarkList list;
+    private TimedAdapter adapter;
+
+    @Test
+    public void benchmark_flingBindCost() throws Exception {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        final Activity activity = rule.getActivity();
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                setUp(activity);
+            }
+        });
+        instrumentation.waitForIdleSync();
+
+        try {
+            long gcBefore = gcCount();
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    list.startRecording();
+                }
+            });
+
+            for (int i = 0; i < FLINGS; i++) {
+                fling(instrumentation, i % 2 == 0 ? 1 : -1);
+            }
+
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    list.stopRecording();
+                }
+            });
+            long gcs = gcCount() - gcBefore;
+
+            Log.i(TAG, String.format("binds: %d, bind: %d ns, frames: %d, slower than 60 fps: %d, gc: %d",
+                    adapter.binds, adapter.binds == 0 ? 0 : adapter.bindNanos / adapter.binds,
+                    list.frames.size(), list.slowFrames(), gcs));
+            assertTrue("no rows were bound", adapter.binds > 0);
+
+        } finally {
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    list.tearDown();
+                }
+            });
+        }
+    }
+
+    /**
+     * Flings as fast as the RecyclerView allows and waits until it stops.
+     */
+    private void fling(Instrumentation instrumentation, final int direction) throws InterruptedException {
+        final CountDownLatch stopped = new CountDownLatch(1);
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                RecyclerView recyclerView = list.recyclerView;
+                recyclerView.setOnScrollListener(new RecyclerView.OnScrollListener() {
+                    @Override
+                    public void onScrollStateChanged(RecyclerView view, int state) {
+                        if (state == RecyclerView.SCROLL_STATE_IDLE) {
+                            stopped.countDown();
+                        }
+                    }
+                });
+                recyclerView.fling(0, direction * Integer.MAX_VALUE);
+            }
+        });
+
+        assertTrue(stopped.await(30, TimeUnit.SECONDS));
+    }
+
+    /**
+     * The maps are folded, as they are for most rows.
+     */
+    private void setUp(Activity activity) {
+        list = new BenchmarkList(activity);
+        adapter = new TimedAdapter(BenchmarkList.reminders(REMINDERS, 70), activity, list);
+        list.setAdapter(adapter);
+    }
+
+    /**
+     * The number of garbage collections so far in the process.
+     */
+    @SuppressWarnings("deprecation")
+    private static long gcCount() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return Long.parseLong(Debug.getRuntimeStat("art.gc.gc-count"));
+        }
+        return Debug.getGlobalGcInvocationCount();
+    }
+
+    /**
+     * Times every bind, called on the main thread only.
+     */
+    private static class TimedAdapter extends MyRecyclerAdapter {
+        long binds;
+        long bindNanos;
+
+        TimedAdapter(ArrayList<Reminder> reminders, Activity activity, BenchmarkList list) {
+            super(BenchmarkList.pager(reminders), activity, new BenchmarkList.NoInput(),
+                    list.loader, list.pool);
+        }
+
+        @Override
+        public void onBindViewHolder(ReminderHolder holder, int position) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            super.onBindViewHolder(holder, position);
+            bindNanos += SystemClock.elapsedRealtimeNanos() - start;
+            binds++;
+        }
+    }
+}
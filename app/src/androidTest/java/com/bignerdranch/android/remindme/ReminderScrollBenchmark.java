@@ -0,0 +1,168 @@
+package com.bignerdranch.android.remindme;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.MapView;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scrolls a list of 1,000 Reminders, all with their maps expanded, and gives every row
+ * that comes into sight a live map, the way it is when the user taps the rows.
+ * Counts the Markers added to each live map, there should never be more than one,
+ * and the time between frames.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ReminderScrollBenchmark {
+
+    private static final String TAG = "ReminderScroll";
+    private static final int REMINDERS = 1000;
+    private static final int STEPS = 300;
+    private static final int STEP_DP = 60;
+
+    @Rule
+    public ActivityTestRule<AppActivity> rule = new ActivityTestRule<>(AppActivity.class);
+
+    private BenchmarkList list;
+    private MyRecyclerAdapter adapter;
+
+    /**
+     * The number of Markers added to each MapView, only used on the main thread.
+     */
+    private final IdentityHashMap<MapView, Integer> markers = new IdentityHashMap<>();
+
+    @Test
+    public void benchmark_scrollKeepsOneMarkerPerMapView() throws Exception {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        final Activity activity = rule.getActivity();
+        final int step = (int) (STEP_DP * activity.getResources().getDisplayMetrics().density);
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                setUp(activity);
+                list.startRecording();
+            }
+        });
+        instrumentation.waitForIdleSync();
+
+        try {
+            for (int i = 0; i < STEPS; i++) {
+                instrumentation.runOnMainSync(new Runnable() {
+                    @Override
+                    public void run() {
+                        list.recyclerView.scrollBy(0, step);
+                        expandVisibleRows();
+                    }
+                });
+                instrumentation.waitForIdleSync();
+            }
+
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    expandVisibleRows();
+                    list.stopRecording();
+                }
+            });
+
+            ArrayList<Long> frames = list.frames;
+            long total = 0;
+            for (long frame : frames) {
+                total += frame;
+            }
+
+            int added = 0;
+            for (int count : markers.values()) {
+                added += count;
+            }
+
+            Log.i(TAG, String.format("maps: %d, markers: %d, frames: %d, average: %.2f ms, slower than 60 fps: %d",
+                    markers.size(), added, frames.size(),
+                    frames.isEmpty() ? 0 : total / frames.size() / 1e6, list.slowFrames()));
+            assertFalse("no live map got a marker", markers.isEmpty());
+            assertTrue("more maps than the pool holds: " + markers.size(),
+                    markers.size() <= MapViewPool.MAX_SIZE);
+            for (int count : markers.values()) {
+                assertEquals("markers pile up on a map", 1, count);
+            }
+
+        } finally {
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    list.tearDown();
+                }
+            });
+        }
+    }
+
+    /**
+     * The maps of all rows are expanded, so every row that is bound shows one.
+     */
+    private void setUp(Activity activity) {
+        ArrayList<Reminder> reminders = BenchmarkList.reminders(REMINDERS, 40);
+        for (Reminder r : reminders) {
+            r.toggleMapVisible();
+        }
+
+        list = new BenchmarkList(activity);
+        adapter = new CountingAdapter(reminders, activity, list);
+        list.setAdapter(adapter);
+    }
+
+    /**
+     * Gives the rows in sight a live map.
+     */
+    private void expandVisibleRows() {
+        RecyclerView recyclerView = list.recyclerView;
+
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            View child = recyclerView.getChildAt(i);
+            MyRecyclerAdapter.ReminderHolder holder =
+                    (MyRecyclerAdapter.ReminderHolder) recyclerView.getChildViewHolder(child);
+            holder.attachLiveMap();
+        }
+    }
+
+    /**
+     * Makes rows that count the Markers they add to each MapView.
+     */
+    private class CountingAdapter extends MyRecyclerAdapter {
+
+        CountingAdapter(ArrayList<Reminder> reminders, Activity activity, BenchmarkList list) {
+            super(BenchmarkList.pager(reminders), activity, new BenchmarkList.NoInput(),
+                    list.loader, list.pool);
+        }
+
+        @Override
+        public ReminderHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return new ReminderHolder(new ReminderListItemView(parent.getContext()) {
+                @Override
+                Marker addMarker(MapView target, GoogleMap map, LatLng location) {
+                    Integer count = markers.get(target);
+                    markers.put(target, count == null ? 1 : count + 1);
+                    return super.addMarker(target, map, location);
+                }
+            });
+        }
+    }
+}
@@ -1,62 +1,56 @@
 package com.bignerdranch.android.remindme;
 
-import android.app.ActivityManager;
-import android.app.Notification;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.location.Location;
+import android.net.Uri;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
 
 import android.support.v4.app.FragmentTransaction;
-import android.support.v4.app.NotificationCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v7.widget.Toolbar;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.FrameLayout;
+import android.widget.Toast;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 
 /**
- * The actual root activity of the app. Controls the Store, the App bar and it's Fragments,
- * the LocationUpdateService and push notifications.
+ * The actual root activity of the app. Controls the App bar and it's Fragments,
+ * the geofences and the LocationUpdateService. The Reminders are kept by the
+ * ReminderRepository of the process, the Activity makes the changes the user asks for
+ * and follows the changes made by others. Triggers and push notifications are
+ * handled by ReminderTrigger.
  */
 public class AppActivity extends AppCompatActivity
         implements NewReminderFragment.ReminderCreator,
                     ServiceControllerFragment.ServiceController,
-                    MyListFragment.NewReminderFragmentLauncher {
+                    MyListFragment.NewReminderFragmentLauncher,
+                    MyListFragment.ReminderEditor {
 
-    private static final String FILENAME = "remindme_data";
-    public static final String LOCATION_UPDATE = "location update";
-    public static final String LOCATION = "location";
-    public static final String KEY_STORE = "store";
-    public static final String KEY_REMINDERS = "reminders";
     public static final String KEY_CURRENT_FRAGMENT = "current fragment";
-
-    private static final int NOTIFICATION_ID = 321123;
+    public static final int IMPORT_REQUEST = 200;
+    public static final String EXPORT_FILENAME = "reminders.csv";
 
     Intent locationService;
 
-    private BroadcastReceiver broadcastReceiver;
+    private Handler mainHandler;
+    private EventChannel.Listener<ReminderRepository.Change> changeListener;
+    private EventChannel.Listener<Integer> geofenceErrorListener;
     private Fragment currentFragment;
     private FragmentManager fragmentManager;
-    private Store store;
+    private ReminderRepository repository;
+    private ReminderGeofences geofences;
 
     /**
-     * Creates an instance of CurrentLocationService to be used if/when
-     * there are Reminders to keep track of.
+     * Connects the geofences that watch the Reminders, and creates an instance of
+     * CurrentLocationService to be used if geofencing doesn't work.
      * Creates a FragmentManager to handle the Fragments.
      * Sets up the Toolbar and calls initializeState.
      * @param savedInstanceState
@@ -67,6 +61,15 @@ public class AppActivity extends AppCompatActivity
         setContentView(R.layout.app_activity_view);
 
         locationService = new Intent(this, CurrentLocationService.class);
+        repository = ReminderRepository.get(this);
+        geofences = new ReminderGeofences(this, new ReminderGeofences.Listener() {
+            @Override
+            public void onGeofencingUnavailable() {
+                serviceControl();
+            }
+        });
+        geofences.connect();
+        subscribe();
         fragmentManager = getSupportFragmentManager();
 
         Toolbar myToolbar = (Toolbar) findViewById(R.id.my_toolbar);
@@ -77,104 +80,49 @@ public class AppActivity extends AppCompatActivity
     }
 
     /**
-     * Initializing the state of the app.
+     * Initializing the state of the app. The Reminders are read from file in the background
+     * the first time, after that the repository already has them. The list is shown when
+     * they are ready, unless a Fragment is restored. The user is told if some of them
+     * couldn't be read.
      * @param savedInstanceState Bundle with data store in.
      */
-    private void initializeState(Bundle savedInstanceState) {
+    private void initializeState(final Bundle savedInstanceState) {
         if (savedInstanceState != null) {
-            store = savedInstanceState.getParcelable(KEY_STORE);
-            currentFragment =  getSupportFragmentManager().getFragment(savedInstanceState, KEY_CURRENT_FRAGMENT);
-            if (currentFragment != null) {
-                launchListFragment();
-            }
-
-        } else {
-            store = new Store();
-
-            String data = loadData();
-            if (!data.isEmpty()) {
-                store.deSerialize(data);
-            }
-
-            launchListFragment();
-        }
-    }
-
-    /**
-     * Writes the data of all stored Reminders to file.
-     */
-    private void saveData() {
-        FileOutputStream outputStream = null;
-
-        try {
-            outputStream = openFileOutput(FILENAME, Context.MODE_PRIVATE);
-
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            outputStream.write(store.serialize().getBytes());
-            outputStream.close();
-        } catch (Exception e) {
-            e.printStackTrace();
+            currentFragment = fragmentManager.getFragment(savedInstanceState, KEY_CURRENT_FRAGMENT);
         }
-    }
-
-    /**
-     * Reads the stored data, if any, from file into a String.
-     * @return a string with the data.
-     */
-    private String loadData() {
-        StringBuilder stringBuilder = new StringBuilder();
-        FileInputStream fis;
 
-        try {
-            fis = openFileInput(FILENAME);
+        repository.load(new Runnable() {
+            @Override
+            public void run() {
+                geofences.replaceAll(repository.snapshot());
+                serviceControl();
+                supportInvalidateOptionsMenu();
 
-            if (fis != null) {
-                InputStreamReader streamReader = new InputStreamReader(fis);
-                BufferedReader bufferedReader = new BufferedReader(streamReader);
-                String nextLine = null;
+                if (repository.takeLoadError() != null) {
+                    Toast.makeText(AppActivity.this, R.string.load_failed, Toast.LENGTH_LONG).show();
+                }
 
-                while ((nextLine = bufferedReader.readLine())!= null) {
-                    stringBuilder.append(nextLine);
+                if (savedInstanceState == null && !isDestroyed() && !fragmentManager.isStateSaved()) {
+                    launchListFragment();
                 }
-                fis.close();
             }
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return stringBuilder.toString();
+        });
     }
 
     /**
-     * Stores the Store and the current fragment when the Activity is being stopped.
+     * Stores the current fragment when the Activity is being stopped.
+     * The Reminders stay in the repository.
      * @param savedInstanceState the bundle to save state in.
      */
     @Override
     public void onSaveInstanceState(Bundle savedInstanceState) {
         super.onSaveInstanceState(savedInstanceState);
 
-        savedInstanceState.putParcelable(KEY_STORE, store);
         if (currentFragment != null && currentFragment.isAdded()){
             getSupportFragmentManager().putFragment(savedInstanceState, KEY_CURRENT_FRAGMENT, currentFragment);
         }
     }
 
-    @Override
-    public void onResume() {
-        super.onResume();
-
-        if (broadcastReceiver == null) {
-            broadcastReceiver = new LocationBroadcastReceiver();
-        }
-
-        registerReceiver(broadcastReceiver, new IntentFilter(LOCATION_UPDATE));
-    }
-
     /**
      * Inflates the action_bar.xml file with the App Bar.
      * @param menu the App Bar.
@@ -186,6 +134,27 @@ public class AppActivity extends AppCompatActivity
         return true;
     }
 
+    /**
+     * A new Reminder can't be created before the stored data is read,
+     * it could get the id of a Reminder that is still on file.
+     * The same goes for an export, it would miss them.
+     * @param menu the App Bar.
+     * @return true for the menu to be displayed.
+     */
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        int[] items = {R.id.new_reminder, R.id.export_reminders};
+
+        for (int id : items) {
+            MenuItem item = menu.findItem(id);
+
+            if (item != null) {
+                item.setEnabled(repository.isLoaded());
+            }
+        }
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     /**
      * Invoked when the user press the Action bar.
      * @param item the MenuItem being pressed.
@@ -205,6 +174,20 @@ public class AppActivity extends AppCompatActivity
             return true;
         }
 
+        if (id == R.id.import_reminders) {
+            Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+            intent.setType("text/*");
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            startActivityForResult(Intent.createChooser(intent, getString(R.string.import_reminders)),
+                    IMPORT_REQUEST);
+            return true;
+        }
+
+        if (id == R.id.export_reminders) {
+            exportReminders();
+            return true;
+        }
+
         return super.onOptionsItemSelected(item);
     }
 
@@ -223,129 +206,177 @@ public class AppActivity extends AppCompatActivity
     }
 
     /**
-     * Creates a MyListFragment, attach the Reminders to it and start a transaction.
+     * Creates a MyListFragment and start a transaction. The Fragment reads
+     * the Reminders it shows from the repository.
      */
     private void launchListFragment() {
         Fragment fragment = new MyListFragment();
         FragmentTransaction transaction = fragmentManager.beginTransaction();
-        Bundle bundle = new Bundle();
-        bundle.putParcelableArrayList(KEY_REMINDERS, store.getReminders());
-        fragment.setArguments(bundle);
         transaction.replace(R.id.content_fragment, fragment);
         transaction.commit();
         currentFragment = fragment;
     }
 
+    /**
+     * Called when the file for an import has been picked.
+     * @param requestCode a request code to see where the result came from.
+     * @param resultCode the result of the operation.
+     * @param data the intent with the Uri of the file.
+     */
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
+
+        if (requestCode == IMPORT_REQUEST && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            importReminders(data.getData());
+        }
+    }
+
+    /**
+     * Imports the Reminders of a file. The list is updated by the change the repository
+     * publishes at the end, the geofences are registered again with all Reminders.
+     * @param uri the file.
+     */
+    private void importReminders(Uri uri) {
+        ReminderTransfer.importFrom(this, uri, new ReminderTransfer.Callback() {
+            @Override
+            public void onFinished(int count, int skipped, IOException error) {
+                if (isDestroyed()) {
+                    return;
+                }
+                if (count > 0) {
+                    geofences.replaceAll(repository.snapshot());
+                    serviceControl();
+                }
+
+                String message = error != null
+                        ? getString(R.string.import_failed, count)
+                        : getString(R.string.import_done, count, skipped);
+                Toast.makeText(AppActivity.this, message, Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    /**
+     * Exports all Reminders to a file in the external files directory of the app,
+     * or in the internal one when there is no external storage.
+     */
+    private void exportReminders() {
+        File directory = getExternalFilesDir(null);
+        final File file = new File(directory != null ? directory : getFilesDir(), EXPORT_FILENAME);
+
+        ReminderTransfer.exportTo(this, file, new ReminderTransfer.Callback() {
+            @Override
+            public void onFinished(int count, int skipped, IOException error) {
+                if (isDestroyed()) {
+                    return;
+                }
+
+                String message = error != null
+                        ? getString(R.string.export_failed)
+                        : getString(R.string.export_done, count, file.getAbsolutePath());
+                Toast.makeText(AppActivity.this, message, Toast.LENGTH_LONG).show();
+            }
+        });
     }
 
     /**
-     * The last method in the Activity lifecycle. If the app is stopped
-     * the Reminders has to be saved and the BroadCastReceiver need to disconnect.
+     * The last method in the Activity lifecycle. The Reminders live on in the repository,
+     * the geofences stay registered without the connection, and the listeners need
+     * to unsubscribe.
      */
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        saveData();
+        geofences.disconnect();
 
-        if (broadcastReceiver != null) {
-            unregisterReceiver(broadcastReceiver);
-        }
+        repository.changes.unsubscribe(changeListener);
+        GeofenceReceiver.UNAVAILABLE.unsubscribe(geofenceErrorListener);
+        mainHandler.removeCallbacksAndMessages(null);
     }
 
     /**
-     * Creates a new Reminder.
-     * Also, if the CurrentLocationService has stopped, it will will be started.
+     * Creates a new Reminder and registers its geofence.
+     * Also, if the CurrentLocationService is needed and has stopped, it will will be started.
      * @param l Location for the Reminder.
      * @param s Text for the Reminder.
      * @param n LocationName for the Reminder.
      * @param list List with further information of the Reminder.
+     * @param radius the radius of the Reminder in meters.
      */
     @Override
-    public void createReminder(Location l, String s, String n, ArrayList<String> list) {
-        Reminder newReminder = new Reminder(l, s, n, Store.MAX_DISTANCE, list);
-        if (store != null) {
-
-            store.add(newReminder);
+    public void createReminder(Location l, String s, String n, ArrayList<String> list, int radius) {
+        Reminder newReminder = new Reminder(l, s, n, radius, list);
 
-            if (serviceHasStopped(CurrentLocationService.class)) {
-                startService(locationService);
-            }
+        if (repository.add(newReminder) != null) {
+            geofences.add(newReminder);
         }
+
+        serviceControl();
         launchListFragment();
     }
 
     /**
-     * Asks the system if a certain service is running.
-     * @param serviceClass the class of the Service of interest.
-     * @return true if serviceClass is running.
+     * Removes a Reminder, called when the user deletes it in the list.
+     * Its geofence goes with the change, see onRemindersChanged.
+     * @param r the Reminder to be removed.
      */
-    private boolean serviceHasStopped(Class<?> serviceClass) {
-        ActivityManager activityMaager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+    @Override
+    public void removeReminder(Reminder r) {
+        repository.remove(r);
+    }
 
-        for (ActivityManager.RunningServiceInfo serviceInfo : activityMaager.getRunningServices(Integer.MAX_VALUE)) {
-            if (serviceClass.getName().equals(serviceInfo.service.getClassName())) {
-                return false;
-            }
+    /**
+     * Gives a Reminder a new Location, called when the user
+     * picks a new place in the list. The geofence is only registered again
+     * if the Reminder is still there.
+     * @param r the Reminder to be moved.
+     * @param location the new Location.
+     */
+    @Override
+    public void moveReminder(Reminder r, Location location) {
+        if (repository.move(r, location)) {
+            geofences.add(r);
         }
-        return true;
     }
 
     /**
-     * Removes the Reminder in Store located at a certain index.
-     * @param index the index of the Reminder to be removed.
+     * Gives a Reminder a new text, called when the user edits it in the list.
+     * @param r the Reminder to be changed.
+     * @param text the new text.
      */
-    private void removeReminder(int index) {
-        if (store != null) {
-            store.remove(index);
-            launchListFragment();
-        }
+    @Override
+    public void changeReminderText(Reminder r, String text) {
+        repository.changeText(r, text);
     }
 
     /**
-     * Constructs and sending a notification with the message String.
-     * @param message The message to be displayed in the notification.
+     * Gives a Reminder a new radius, called when the user picks one in the list.
+     * The geofence is registered again with the new radius, if the Reminder is still there.
+     * @param r the Reminder to be changed.
+     * @param radius the new radius in meters.
      */
-    private void createNotification(String message) {
-        NotificationCompat.Builder notificationBuilder =
-                new NotificationCompat.Builder(AppActivity.this)
-                        .setSmallIcon(R.drawable.notification_yellow)
-                        .setAutoCancel(true)
-                        .setTicker("Ticker")
-                        .setWhen(System.currentTimeMillis())
-                        .setContentTitle("Reminder")
-                        .setContentText(message)
-                        .setDefaults(Notification.DEFAULT_ALL)
-                        .setPriority(Notification.PRIORITY_MAX)
-                ;
-
-        Intent resultIntent = new Intent(AppActivity.this, AppActivity.class);
-        resultIntent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
-
-
-        PendingIntent pendingIntent =
-                PendingIntent.getActivity(AppActivity.this, 0, resultIntent, PendingIntent.FLAG_UPDATE_CURRENT);
-
-        notificationBuilder.setContentIntent(pendingIntent);
-
-        NotificationManager nm = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
-        nm.notify(NOTIFICATION_ID, notificationBuilder.build());
+    @Override
+    public void changeReminderRadius(Reminder r, int radius) {
+        if (repository.changeRadius(r, radius)) {
+            geofences.add(r);
+        }
     }
 
     /**
-     * Stops the LocationSevice if there are no Reminders to keep track of,
-     * and if there are Reminders in Store, and the LocationService is not running,
-     * it starts it again.
+     * Stops the LocationSevice if there are no Reminders to keep track of, or
+     * the geofences are watching them. If there are Reminders in Store, geofencing
+     * doesn't work and the LocationService is not running, it starts it again.
      */
     @Override
     public void serviceControl() {
-        if (store.isEmpty()) {
-            stopService(locationService);
+        if (repository.isEmpty() || geofences.isAvailable()) {
+            if (CurrentLocationService.isRunning()) {
+                stopService(locationService);
+            }
 
         } else {
-            if (serviceHasStopped(CurrentLocationService.class)) {
+            if (!CurrentLocationService.isRunning()) {
 
                 startService(locationService);
             }
@@ -353,30 +384,46 @@ public class AppActivity extends AppCompatActivity
     }
 
     /**
-     * Custom BroadCastReceiver for receiving messages from CurrentLocationService.
+     * Listens to the repository and GeofenceReceiver for as long as the Activity lives.
+     * The errors of GeofenceReceiver are published on other threads, they are handled
+     * on the main thread.
      */
-    public class LocationBroadcastReceiver extends BroadcastReceiver {
-
-        /**
-         * Called when the receiver receives the intent.
-         * Asking Store if the current location is near any of the Reminder's locations,
-         * if so a notification is sent and the Reminder is removed.
-         * @param context the context in which the receiver is running.
-         * @param intent intent containing the current location.
-         */
-        @Override // when the receiver receives the intent
-        public void onReceive(Context context, Intent intent) {
-
-            Location location = intent.getParcelableExtra(LOCATION);
-            int index = store.isNear(location);
-
-            if (index >= 0) {
-//                Toast.makeText(AppActivity.this, "Near!", Toast.LENGTH_SHORT).show();
-                Reminder reminder = store.getIndex(index);
-                createNotification(reminder.getText());
-                removeReminder(index);
-                serviceControl();
+    private void subscribe() {
+        mainHandler = new Handler(Looper.getMainLooper());
+
+        changeListener = new EventChannel.Listener<ReminderRepository.Change>() {
+            @Override
+            public void onEvent(ReminderRepository.Change change) {
+                onRemindersChanged(change);
+            }
+        };
+
+        geofenceErrorListener = new EventChannel.Listener<Integer>() {
+            @Override
+            public void onEvent(Integer errorCode) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        geofences.setUnavailable();
+                    }
+                });
             }
+        };
+
+        repository.changes.subscribe(changeListener);
+        GeofenceReceiver.UNAVAILABLE.subscribe(geofenceErrorListener);
+    }
+
+    /**
+     * Called on the main thread when the Reminders have changed, by the user or because
+     * they were triggered. Removed Reminders don't need their geofences anymore, and the
+     * service may have to stop.
+     * @param change the change.
+     */
+    private void onRemindersChanged(ReminderRepository.Change change) {
+        if (change.removed.length > 0) {
+            geofences.removeAll(change.removed);
+            serviceControl();
         }
     }
 }
@@ -0,0 +1,188 @@
+package com.bignerdranch.android.remindme;
+
+import android.location.Location;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A Store that is changed on one thread and searched on others, like the main thread
+ * of ReminderRepository and the trigger thread of ReminderTrigger.
+ *
+ * The writers take turns on one lock and change the Store itself, and only they read it.
+ * Other threads read snapshot(), a copy that never changes. A change doesn't copy
+ * anything, it only marks the copy as stale, and a new one is made the first time
+ * snapshot is called after that. A burst of changes, like the batches of an import,
+ * costs one copy, and none if nobody searches the Store in between.
+ *
+ * A proximity check never sees a change that is half made, and any number of them can
+ * run on the same copy at once. It only waits for a writer when the copy is stale.
+ * The Reminders themselves are shared with the copies, a Reminder that is moved or
+ * given a new text is changed in place, the next copy has its new position.
+ */
+class ConcurrentStore extends Store {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile Store published;
+    private volatile boolean stale;
+
+    ConcurrentStore() {
+        published = new Store(this);
+    }
+
+    /**
+     * A copy of the Store that never changes, for the threads that don't write it.
+     * It must not be changed. Can be called on any thread.
+     * @return the copy of the latest change, it is made now if it is stale.
+     */
+    Store snapshot() {
+        if (stale) {
+            lock.lock();
+            try {
+                if (stale) {
+                    published = new Store(this);
+                    stale = false;
+                }
+
+            } finally {
+                lock.unlock();
+            }
+        }
+        return published;
+    }
+
+    /**
+     * Called with the lock held, after every change.
+     */
+    private void changed() {
+        stale = true;
+    }
+
+    @Override
+    public Reminder add(Reminder r) {
+        lock.lock();
+        try {
+            Reminder added = super.add(r);
+            if (added != null) {
+                changed();
+            }
+            return added;
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Reminder> addAll(Collection<Reminder> batch) {
+        lock.lock();
+        try {
+            List<Reminder> added = super.addAll(batch);
+            if (!added.isEmpty()) {
+                changed();
+            }
+            return added;
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    void restore(Reminder r) {
+        lock.lock();
+        try {
+            super.restore(r);
+            changed();
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    void restoreAll(Collection<Reminder> batch) {
+        lock.lock();
+        try {
+            super.restoreAll(batch);
+            changed();
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(Reminder r) {
+        lock.lock();
+        try {
+            super.remove(r);
+            changed();
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<Reminder> batch) {
+        lock.lock();
+        try {
+            super.removeAll(batch);
+            changed();
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Reminder> removeAllById(long[] ids) {
+        lock.lock();
+        try {
+            List<Reminder> removed = super.removeAllById(ids);
+            changed();
+            return removed;
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void move(Reminder r, Location newLocation) {
+        lock.lock();
+        try {
+            super.move(r, newLocation);
+            changed();
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setText(Reminder r, String text) {
+        lock.lock();
+        try {
+            super.setText(r, text);
+            changed();
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setRadius(Reminder r, int radius) {
+        lock.lock();
+        try {
+            super.setRadius(r, radius);
+            changed();
+
+        } finally {
+            lock.unlock();
+        }
+    }
+}
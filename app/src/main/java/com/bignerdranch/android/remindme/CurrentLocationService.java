@@ -7,50 +7,192 @@ import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
 import android.provider.Settings;
 import android.support.annotation.Nullable;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Created by annika on 2017-08-11.
  */
 
 /**
- * A background service that has a LocationListener. It provides the AppActivity
- * with updates about the position of the device.
+ * A background service that has a LocationListener, used when the Reminders can't
+ * be watched with geofences. Every location update is published on LOCATIONS, on the
+ * trigger thread, and checked against the Reminders by a ReminderTrigger there.
+ * The main thread and AppActivity are not involved unless a Reminder is triggered.
+ * The ReminderTrigger reads the Reminders of the ReminderRepository, a change of them
+ * only has the updates rescheduled.
  * This Service only runs when there are reminders in store.
  */
 public class CurrentLocationService extends Service {
 
+    /**
+     * Every location update of the service, published on the trigger thread.
+     */
+    static final EventChannel<Location> LOCATIONS = new EventChannel<>();
+
+    /**
+     * Set between onCreate and onDestroy, so nobody has to ask the system.
+     */
+    private static final AtomicBoolean RUNNING = new AtomicBoolean();
+
     private MyLocationListener locationListener;
     private LocationManager locationManager;
+    private Handler handler;
+    private ReminderTrigger trigger;
+    private EventChannel.Listener<Location> triggerListener;
+    private EventChannel.Listener<ReminderRepository.Change> changeListener;
 
     /**
-     * Sets up the LocationListener and it's LocationManager.
-     * It will update every 5 seconds. Location permission is already
-     * granted.
+     * Set in onDestroy. The callback of trigger.load is posted by ReminderTrigger,
+     * onDestroy can't drop it, so requestUpdates checks this. Guarded by the service,
+     * no updates are asked for after onDestroy has removed them.
+     */
+    private boolean destroyed;
+
+    /**
+     * Only used on the trigger thread.
+     */
+    private LocationUpdateScheduler scheduler;
+    private Location lastLocation;
+    private Location previousLocation;
+
+    /**
+     * Sets up the LocationListener and it's LocationManager, and has the
+     * Reminders read for the ReminderTrigger.
+     * It starts with an update every 5 seconds, until it is known how far away
+     * the Reminders are. Location permission is already granted.
      */
     @Override
     public void onCreate() {
         super.onCreate();
+        RUNNING.set(true);
 
         locationListener = new MyLocationListener();
         locationManager = (LocationManager) getApplicationContext().getSystemService(Context.LOCATION_SERVICE);
+        handler = new Handler(ReminderTrigger.looper());
+        scheduler = new LocationUpdateScheduler();
+
+        trigger = new ReminderTrigger(this);
+        trigger.load(new Runnable() {
+            @Override
+            public void run() {
+                reschedule();
+            }
+        });
+
+        triggerListener = new EventChannel.Listener<Location>() {
+            @Override
+            public void onEvent(Location location) {
+                check(location);
+            }
+        };
+        LOCATIONS.subscribe(triggerListener);
+
+        changeListener = new EventChannel.Listener<ReminderRepository.Change>() {
+            @Override
+            public void onEvent(ReminderRepository.Change change) {
+                onRemindersChanged(change);
+            }
+        };
+        ReminderRepository.get(this).changes.subscribe(changeListener);
+
+        requestUpdates();
+    }
+
+    /**
+     * Called on the main thread when the Reminders in the repository have changed.
+     * The updates are rescheduled on the trigger thread, a new Reminder may be closer
+     * than the ones before, and the service stops when the last one is removed.
+     * @param change the change.
+     */
+    private void onRemindersChanged(ReminderRepository.Change change) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (trigger.isEmpty()) {
+                    stopSelf();
+                } else {
+                    reschedule();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return true if the service is created and not yet destroyed.
+     */
+    static boolean isRunning() {
+        return RUNNING.get();
+    }
+
+    /**
+     * Asks for location updates as often as the scheduler says,
+     * they are delivered on the trigger thread. Nothing happens after onDestroy.
+     */
+    private synchronized void requestUpdates() {
+        if (destroyed) {
+            return;
+        }
 
         //noinspection MissingPermission
-        locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 5000, 0, locationListener);
+        locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER,
+                scheduler.getInterval(), scheduler.getMinDistance(), locationListener,
+                ReminderTrigger.looper());
     }
 
     /**
-     * Called when the service is started in the Activity.
-     * @param intent the intent supplied to the "startServie(intent)".
-     * @param flags some additional data.
-     * @param startId an id to differ this service from other.
-     * @return the semantics the system should use or the current state of the service.
+     * Runs on the trigger thread. Checks the Reminders at the location, then reschedules
+     * the updates, or stops the service when there are no Reminders left.
+     * @param location the current location of the device.
      */
-    @Override
-    public int onStartCommand(Intent intent, int flags, int startId) {
-        return super.onStartCommand(intent,flags,startId);
+    private void check(Location location) {
+        previousLocation = lastLocation;
+        lastLocation = location;
+
+        trigger.check(location);
+
+        if (trigger.isEmpty()) {
+            stopSelf();
+        } else {
+            reschedule();
+        }
+    }
+
+    /**
+     * Runs on the trigger thread. Updates the schedule from the distance to the nearest
+     * Reminder, and asks for the updates again if it has changed.
+     */
+    private void reschedule() {
+        double distance = trigger.distanceToNearest(lastLocation);
+
+        if (scheduler.update(distance, estimateSpeed())) {
+            //noinspection MissingPermission
+            locationManager.removeUpdates(locationListener);
+            requestUpdates();
+        }
+    }
+
+    /**
+     * @return the speed of the device in meters per second, from the GPS if it has one,
+     * otherwise from the last two locations. 0 if it is not known.
+     */
+    private float estimateSpeed() {
+        if (lastLocation == null) {
+            return 0;
+        }
+        if (lastLocation.hasSpeed()) {
+            return lastLocation.getSpeed();
+        }
+        if (previousLocation == null) {
+            return 0;
+        }
+
+        long millis = lastLocation.getTime() - previousLocation.getTime();
+        return millis > 0 ? lastLocation.distanceTo(previousLocation) * 1000 / millis : 0;
     }
 
     /**
@@ -66,37 +208,40 @@ public class CurrentLocationService extends Service {
     }
 
     /**
-     * Makes sure that the service is stopped when the calling Activity is.
+     * Stops the location updates, and drops the work that is still waiting
+     * on the trigger thread.
      */
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (locationManager != null) {
-            //noinspection MissingPermission
-            locationManager.removeUpdates(locationListener);
+        RUNNING.set(false);
+        synchronized (this) {
+            destroyed = true;
+            if (locationManager != null) {
+                //noinspection MissingPermission
+                locationManager.removeUpdates(locationListener);
+            }
         }
+        LOCATIONS.unsubscribe(triggerListener);
+        ReminderRepository.get(this).changes.unsubscribe(changeListener);
+        handler.removeCallbacksAndMessages(null);
     }
 
 
     /**
-     * A customixed LocationListener. When called by the CurrentLocationService,
-     * it will create an Intent, put the current location inside it.
-     * The intent will be received by AppActivity using sendBroadcast
-     * (AppActivity has got a inner BroadcastReceiver).
+     * A customixed LocationListener, called on the trigger thread.
+     * It hands every location to the subscribers of LOCATIONS.
      */
     private class MyLocationListener implements LocationListener {
 
         /**
          * Called when the location has changed.
-         * Creates the intent with the current location. Sending it to AppActivity.
+         * Publishes the current location, without leaving the process.
          * @param location the current location of the device.
          */
         @Override
         public void onLocationChanged(Location location) {
-            Intent intent = new Intent(AppActivity.LOCATION_UPDATE); // nyckelsträng för att hitta rätt intent
-
-            intent.putExtra(AppActivity.LOCATION, location);
-            sendBroadcast(intent);
+            LOCATIONS.publish(location);
         }
 
         /**
@@ -0,0 +1,71 @@
+package com.bignerdranch.android.remindme;
+
+import java.util.Arrays;
+
+/**
+ * Passes events between the parts of the app within the process, instead of
+ * a broadcast that goes through the system and has to parcel its extras.
+ *
+ * The Listeners are called on the thread that publishes, in the order they
+ * subscribed. Publishing takes no lock and allocates nothing: the Listeners
+ * are kept in an array that is replaced, never changed, when someone
+ * subscribes or unsubscribes.
+ * @param <T> the type of the events.
+ */
+final class EventChannel<T> {
+
+    interface Listener<T> {
+        void onEvent(T event);
+    }
+
+    private volatile Listener<T>[] listeners;
+
+    @SuppressWarnings("unchecked")
+    EventChannel() {
+        listeners = (Listener<T>[]) new Listener[0];
+    }
+
+    /**
+     * @param listener called with every event published after this.
+     */
+    synchronized void subscribe(Listener<T> listener) {
+        Listener<T>[] next = Arrays.copyOf(listeners, listeners.length + 1);
+        next[listeners.length] = listener;
+        listeners = next;
+    }
+
+    /**
+     * @param listener a Listener that is no longer called.
+     */
+    synchronized void unsubscribe(Listener<T> listener) {
+        Listener<T>[] current = listeners;
+
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                Listener<T>[] next = Arrays.copyOf(current, current.length - 1);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                listeners = next;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Calls every Listener with the event, on this thread.
+     * @param event the event.
+     */
+    void publish(T event) {
+        Listener<T>[] current = listeners;
+
+        for (int i = 0; i < current.length; i++) {
+            current[i].onEvent(event);
+        }
+    }
+
+    /**
+     * @return true if anyone is listening.
+     */
+    boolean hasListeners() {
+        return listeners.length > 0;
+    }
+}
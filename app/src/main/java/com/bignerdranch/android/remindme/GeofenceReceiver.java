@@ -0,0 +1,78 @@
+package com.bignerdranch.android.remindme;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingEvent;
+
+import java.util.List;
+
+/**
+ * Receives the geofence transitions registered by ReminderGeofences. The entered
+ * Reminders are triggered by a ReminderTrigger, which has the repository read them
+ * if the app is not open. The receiver is kept alive with goAsync until that is done.
+ *
+ * When the geofences stop working, CurrentLocationService is started from here, since
+ * there may be no Activity to do it. It stops itself if there are no Reminders.
+ */
+public class GeofenceReceiver extends BroadcastReceiver {
+
+    /**
+     * The error code of the GeofencingEvent, when the geofences have stopped working.
+     */
+    static final EventChannel<Integer> UNAVAILABLE = new EventChannel<>();
+
+    /**
+     * Called by Play services with a GeofencingEvent. An error means that the geofences
+     * have been removed, for example because location was turned off.
+     * @param context the context in which the receiver is running.
+     * @param intent intent containing the GeofencingEvent.
+     */
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        GeofencingEvent event = GeofencingEvent.fromIntent(intent);
+
+        if (event.hasError()) {
+            UNAVAILABLE.publish(event.getErrorCode());
+            startLocationService(context);
+
+        } else if (event.getGeofenceTransition() == Geofence.GEOFENCE_TRANSITION_ENTER) {
+            List<Geofence> geofences = event.getTriggeringGeofences();
+            final long[] ids = new long[geofences.size()];
+
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = Long.parseLong(geofences.get(i).getRequestId());
+            }
+
+            final PendingResult result = goAsync();
+            final ReminderTrigger trigger = new ReminderTrigger(context);
+
+            trigger.load(new Runnable() {
+                @Override
+                public void run() {
+                    trigger.check(ids);
+                    result.finish();
+                }
+            });
+        }
+    }
+
+    /**
+     * Starts the service that watches the Reminders without geofences, unless it runs.
+     * Android 8 doesn't let an app in the background start a service, then it is started
+     * by AppActivity when the app is opened.
+     */
+    private static void startLocationService(Context context) {
+        if (CurrentLocationService.isRunning()) {
+            return;
+        }
+
+        try {
+            context.startService(new Intent(context, CurrentLocationService.class));
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.bignerdranch.android.remindme;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of ints, so that slot numbers don't have to be boxed.
+ * Used by the Store and the SpatialGrid on the proximity hot path.
+ */
+class IntList {
+
+    private int[] values;
+    private int size;
+
+    IntList() {
+        this(8);
+    }
+
+    IntList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * @param other the list to copy.
+     */
+    IntList(IntList other) {
+        values = Arrays.copyOf(other.values, Math.max(other.size, 1));
+        size = other.size;
+    }
+
+    /**
+     * @param value the value to be added last.
+     */
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * @param index an index.
+     * @return the value at the index.
+     */
+    int get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Removes a value by moving the last value into its place,
+     * the order of the list is not kept.
+     * @param value the value to be removed.
+     * @return true if the value was found.
+     */
+    boolean removeValue(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                values[i] = values[--size];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes and returns the last value.
+     * @return the last value.
+     */
+    int removeLast() {
+        return values[--size];
+    }
+
+    /**
+     * @param other the list whose values are added last.
+     */
+    void addAll(IntList other) {
+        int newSize = size + other.size;
+        if (newSize > values.length) {
+            values = Arrays.copyOf(values, Math.max(newSize, values.length * 2));
+        }
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size = newSize;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,70 @@
+package com.bignerdranch.android.remindme;
+
+/**
+ * Decides how often CurrentLocationService asks for location updates.
+ * The closer the device is to the nearest Reminder, and the faster it moves,
+ * the more often it has to ask. When the nearest Reminder is kilometres away
+ * the GPS can be left alone for minutes.
+ */
+class LocationUpdateScheduler {
+
+    static final long MIN_INTERVAL = 5000;
+    static final long MAX_INTERVAL = 10 * 60 * 1000;
+    static final float MAX_MIN_DISTANCE = 1000;
+
+    /**
+     * The speed assumed when the device stands still or the speed is unknown,
+     * a little faster than walking.
+     */
+    static final float MIN_SPEED = 2;
+
+    /**
+     * The schedule only changes if the interval changes by more than this factor,
+     * so the updates are not re-registered on every fix.
+     */
+    private static final double CHANGE_FACTOR = 1.5;
+
+    private long interval = MIN_INTERVAL;
+    private float minDistance;
+
+    /**
+     * Computes a new schedule. Half of the time it would take to reach the nearest
+     * Reminder is left as a safety margin, and the distance filter is set to half
+     * the distance, so that an update comes well before the Reminder is reached.
+     * @param distance the distance in meters to the edge of the nearest Reminder's radius,
+     *                 0 if inside it.
+     * @param speed the speed of the device in meters per second.
+     * @return true if the schedule changed and the updates should be requested again.
+     */
+    boolean update(double distance, float speed) {
+        double secondsAway = Math.max(distance, 0) / Math.max(speed, MIN_SPEED);
+        long newInterval = (long) Math.min(MAX_INTERVAL, Math.max(MIN_INTERVAL, secondsAway * 500));
+        float newMinDistance = (float) Math.min(MAX_MIN_DISTANCE, Math.max(distance, 0) / 2);
+
+        // Getting closer is acted on at once, moving away only when it pays off.
+        boolean changed = newInterval < interval
+                || newInterval > interval * CHANGE_FACTOR
+                || newMinDistance * CHANGE_FACTOR < minDistance;
+
+        if (changed) {
+            interval = newInterval;
+            minDistance = newMinDistance;
+        }
+
+        return changed;
+    }
+
+    /**
+     * @return the time between updates in milliseconds.
+     */
+    long getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return the distance in meters the device has to move between updates.
+     */
+    float getMinDistance() {
+        return minDistance;
+    }
+}
@@ -0,0 +1,215 @@
+package com.bignerdranch.android.remindme;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps the rendered map pictures of the Reminders, so a map is only rendered once
+ * for a position. The pictures are kept in memory, bounded by their size in bytes,
+ * and on disk in the cache directory, where the least recently used are deleted
+ * when the directory grows too large.
+ *
+ * There is one cache for the whole process, so the pictures survive the list
+ * being re-created.
+ */
+class MapSnapshotCache {
+
+    static final int ZOOM = 15;
+
+    private static final long MAX_DISK_BYTES = 10 * 1024 * 1024;
+    private static final String DIRECTORY = "map_snapshots";
+
+    private static MapSnapshotCache instance;
+
+    private LruCache<String, Bitmap> memory;
+    private File directory;
+    private ExecutorService disk;
+    private Handler mainHandler;
+
+    /**
+     * Called on the main thread with the picture read from disk, or null if there was none.
+     */
+    interface Callback {
+        void onSnapshot(String key, Bitmap snapshot);
+    }
+
+    /**
+     * @param context a Context.
+     * @return the cache of the process.
+     */
+    static synchronized MapSnapshotCache get(Context context) {
+        if (instance == null) {
+            instance = new MapSnapshotCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private MapSnapshotCache(Context context) {
+        int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+
+        memory = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap snapshot) {
+                return snapshot.getByteCount();
+            }
+        };
+
+        directory = new File(context.getCacheDir(), DIRECTORY);
+        mainHandler = new Handler(Looper.getMainLooper());
+        disk = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "MapSnapshotCache");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * The positions are rounded to about a meter, closer than that gives the same picture.
+     * @param latitude the latitude of the pin.
+     * @param longitude the longitude of the pin.
+     * @param zoom the zoom level of the map.
+     * @return the key of the picture.
+     */
+    static String key(double latitude, double longitude, int zoom) {
+        return String.format(Locale.US, "%.5f_%.5f_%d", latitude, longitude, zoom);
+    }
+
+    /**
+     * @param key the key of a picture.
+     * @return the picture if it is in memory, otherwise null.
+     */
+    Bitmap getFromMemory(String key) {
+        return memory.get(key);
+    }
+
+    /**
+     * Reads a picture from disk on the background thread, and puts it in memory if found.
+     * @param key the key of a picture.
+     * @param callback called on the main thread.
+     */
+    void getFromDisk(final String key, final Callback callback) {
+        disk.execute(new Runnable() {
+            @Override
+            public void run() {
+                File file = new File(directory, key);
+                final Bitmap snapshot = file.exists() ? BitmapFactory.decodeFile(file.getPath()) : null;
+
+                if (snapshot != null) {
+                    file.setLastModified(System.currentTimeMillis());
+                }
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (snapshot != null) {
+                            memory.put(key, snapshot);
+                        }
+                        callback.onSnapshot(key, snapshot);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Puts a new picture in memory, and writes it to disk on the background thread.
+     * @param key the key of the picture.
+     * @param snapshot the picture.
+     */
+    void put(final String key, final Bitmap snapshot) {
+        memory.put(key, snapshot);
+
+        disk.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(key, snapshot);
+                trim();
+            }
+        });
+    }
+
+    /**
+     * Empties the memory, the pictures on disk are kept.
+     */
+    void trimMemory() {
+        memory.evictAll();
+    }
+
+    /**
+     * Runs on the background thread. The picture is written to a temporary file
+     * first, so a half written picture is never read.
+     */
+    private void write(String key, Bitmap snapshot) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+
+        File temporary = new File(directory, key + ".tmp");
+
+        try {
+            FileOutputStream out = new FileOutputStream(temporary);
+            try {
+                snapshot.compress(Bitmap.CompressFormat.JPEG, 85, out);
+            } finally {
+                out.close();
+            }
+
+            if (!temporary.renameTo(new File(directory, key))) {
+                temporary.delete();
+            }
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            temporary.delete();
+        }
+    }
+
+    /**
+     * Runs on the background thread. Deletes the least recently used pictures
+     * until the directory fits.
+     */
+    private void trim() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_DISK_BYTES) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+
+        for (int i = 0; i < files.length && total > MAX_DISK_BYTES; i++) {
+            total -= files[i].length();
+            files[i].delete();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.bignerdranch.android.remindme;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import com.google.android.gms.maps.CameraUpdateFactory;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.GoogleMapOptions;
+import com.google.android.gms.maps.MapView;
+import com.google.android.gms.maps.OnMapReadyCallback;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Shows the map of a Reminder as a picture, so the rows of the list don't need a MapView each.
+ * The picture is taken from MapSnapshotCache, from memory first and then from disk. If it isn't
+ * there it is rendered by one lite mode MapView, which is hidden behind the list, and put in
+ * the cache. The maps are rendered one at a time, the one asked for last first, since that
+ * is the row that has just been scrolled into sight.
+ *
+ * An ImageView is tagged with the key of the picture it waits for, so a row that has been
+ * recycled to another Reminder doesn't get the picture of the old one. A map that no
+ * ImageView waits for anymore is not rendered at all, so a fling doesn't leave a queue
+ * of rows that are long gone in front of the visible ones. A render that doesn't finish
+ * within RENDER_TIMEOUT_MILLIS is given up, so the renderer can't get stuck on one map.
+ *
+ * The lifecycle of the renderer has to be forwarded by the hosting fragment.
+ */
+class MapSnapshotLoader implements OnMapReadyCallback {
+
+    private static final long RENDER_TIMEOUT_MILLIS = 10000;
+
+    private MapSnapshotCache cache;
+    private MapView renderer;
+    private GoogleMap googleMap;
+    private Marker marker;
+    private boolean rendering;
+    private int renders;
+    private Handler handler;
+
+    private ArrayDeque<String> queue;
+    private HashMap<String, LatLng> positions;
+    private HashMap<String, ArrayList<ImageView>> targets;
+
+    /**
+     * @param context a Context.
+     * @param rendererContainer the hidden view the renderer is added to, it has the size of the pictures.
+     */
+    MapSnapshotLoader(Context context, ViewGroup rendererContainer) {
+        cache = MapSnapshotCache.get(context);
+        queue = new ArrayDeque<>();
+        positions = new HashMap<>();
+        targets = new HashMap<>();
+        handler = new Handler(Looper.getMainLooper());
+
+        renderer = new MapView(context, new GoogleMapOptions().liteMode(true).mapToolbarEnabled(false));
+        rendererContainer.addView(renderer, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+    }
+
+    /**
+     * Shows the map around a position, with a pin at it, in an ImageView.
+     * The ImageView is empty until the picture is read or rendered.
+     * @param latitude the latitude of the pin.
+     * @param longitude the longitude of the pin.
+     * @param target the ImageView.
+     */
+    void load(double latitude, double longitude, ImageView target) {
+        final String key = MapSnapshotCache.key(latitude, longitude, MapSnapshotCache.ZOOM);
+
+        if (key.equals(target.getTag()) && target.getDrawable() != null) {
+            return;
+        }
+        target.setTag(key);
+
+        Bitmap snapshot = cache.getFromMemory(key);
+        if (snapshot != null) {
+            target.setImageBitmap(snapshot);
+            return;
+        }
+        target.setImageDrawable(null);
+
+        ArrayList<ImageView> waiting = targets.get(key);
+        if (waiting != null) {
+            waiting.add(target);
+            return;
+        }
+
+        waiting = new ArrayList<>();
+        waiting.add(target);
+        targets.put(key, waiting);
+        positions.put(key, new LatLng(latitude, longitude));
+
+        cache.getFromDisk(key, new MapSnapshotCache.Callback() {
+            @Override
+            public void onSnapshot(String key, Bitmap snapshot) {
+                if (snapshot != null) {
+                    deliver(key, snapshot);
+                } else {
+                    queue.add(key);
+                    render();
+                }
+            }
+        });
+    }
+
+    void onCreate(Bundle savedInstanceState) {
+        renderer.onCreate(savedInstanceState);
+        renderer.getMapAsync(this);
+    }
+
+    void onResume() {
+        renderer.onResume();
+    }
+
+    void onPause() {
+        renderer.onPause();
+    }
+
+    /**
+     * Pictures that were waited for are dropped.
+     */
+    void onDestroy() {
+        handler.removeCallbacksAndMessages(null);
+        queue.clear();
+        positions.clear();
+        targets.clear();
+        renderer.onDestroy();
+        googleMap = null;
+        marker = null;
+    }
+
+    void onLowMemory() {
+        renderer.onLowMemory();
+        cache.trimMemory();
+    }
+
+    @Override
+    public void onMapReady(GoogleMap googleMap) {
+        this.googleMap = googleMap;
+        render();
+    }
+
+    /**
+     * Renders the newest map in the queue that is still waited for, unless one is being rendered.
+     */
+    private void render() {
+        if (rendering || googleMap == null) {
+            return;
+        }
+
+        String next = null;
+        while (next == null && !queue.isEmpty()) {
+            next = queue.pollLast();
+            if (!isWaitedFor(next)) {
+                positions.remove(next);
+                targets.remove(next);
+                next = null;
+            }
+        }
+        if (next == null) {
+            return;
+        }
+
+        final String key = next;
+        final int current = ++renders;
+        LatLng position = positions.get(key);
+        rendering = true;
+
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (current == renders) {
+                    finish(key, null);
+                }
+            }
+        }, RENDER_TIMEOUT_MILLIS);
+
+        if (marker == null) {
+            marker = googleMap.addMarker(new MarkerOptions().position(position));
+        } else {
+            marker.setPosition(position);
+        }
+        googleMap.moveCamera(CameraUpdateFactory.newLatLngZoom(position, MapSnapshotCache.ZOOM));
+
+        googleMap.setOnMapLoadedCallback(new GoogleMap.OnMapLoadedCallback() {
+            @Override
+            public void onMapLoaded() {
+                if (googleMap == null || current != renders) {
+                    return;
+                }
+
+                googleMap.snapshot(new GoogleMap.SnapshotReadyCallback() {
+                    @Override
+                    public void onSnapshotReady(Bitmap snapshot) {
+                        if (current == renders) {
+                            finish(key, snapshot);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Ends the render of a map and starts the next one. The callbacks of
+     * a render that was given up are ignored if they come later.
+     * @param key the key of the map.
+     * @param snapshot the picture, null if it couldn't be rendered.
+     */
+    private void finish(String key, Bitmap snapshot) {
+        rendering = false;
+        renders++;
+        handler.removeCallbacksAndMessages(null);
+
+        if (snapshot != null) {
+            cache.put(key, snapshot);
+            deliver(key, snapshot);
+        } else {
+            positions.remove(key);
+            targets.remove(key);
+        }
+        render();
+    }
+
+    /**
+     * @return true if an ImageView is still tagged with the key.
+     */
+    private boolean isWaitedFor(String key) {
+        ArrayList<ImageView> waiting = targets.get(key);
+
+        if (waiting != null) {
+            for (ImageView target : waiting) {
+                if (key.equals(target.getTag())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the picture to the ImageViews that still wait for it.
+     */
+    private void deliver(String key, Bitmap snapshot) {
+        positions.remove(key);
+        ArrayList<ImageView> waiting = targets.remove(key);
+
+        if (waiting == null) {
+            return;
+        }
+
+        for (ImageView target : waiting) {
+            if (key.equals(target.getTag())) {
+                target.setImageBitmap(snapshot);
+            }
+        }
+    }
+}
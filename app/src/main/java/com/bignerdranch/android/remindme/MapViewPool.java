@@ -0,0 +1,104 @@
+package com.bignerdranch.android.remindme;
+
+import android.content.Context;
+import android.view.ViewGroup;
+
+import com.google.android.gms.maps.MapView;
+
+import java.util.ArrayList;
+
+/**
+ * A few live MapViews shared by the rows of the list. A row borrows one when the user
+ * expands its map and gives it back when it is collapsed or recycled, so the number of
+ * MapViews doesn't grow with the number of Reminders.
+ *
+ * The MapViews are created when they are first needed, and brought to the state of the
+ * hosting fragment, which forwards its lifecycle to the pool.
+ */
+class MapViewPool {
+
+    static final int MAX_SIZE = 3;
+
+    private Context context;
+    private ArrayList<MapView> all;
+    private ArrayList<MapView> idle;
+    private boolean resumed;
+
+    /**
+     * @param context the Context of the MapViews.
+     */
+    MapViewPool(Context context) {
+        this.context = context;
+        all = new ArrayList<>();
+        idle = new ArrayList<>();
+    }
+
+    /**
+     * @return an idle MapView, or null if all of them are borrowed.
+     */
+    MapView acquire() {
+        if (!idle.isEmpty()) {
+            return idle.remove(idle.size() - 1);
+        }
+
+        if (all.size() >= MAX_SIZE) {
+            return null;
+        }
+
+        MapView mapView = new MapView(context);
+        mapView.onCreate(null);
+        if (resumed) {
+            mapView.onResume();
+        }
+        all.add(mapView);
+
+        return mapView;
+    }
+
+    /**
+     * Takes back a MapView, it is removed from the row it was added to.
+     * @param mapView a MapView from acquire().
+     */
+    void release(MapView mapView) {
+        ViewGroup parent = (ViewGroup) mapView.getParent();
+        if (parent != null) {
+            parent.removeView(mapView);
+        }
+        idle.add(mapView);
+    }
+
+    void onResume() {
+        resumed = true;
+        for (MapView mapView : all) {
+            mapView.onResume();
+        }
+    }
+
+    void onPause() {
+        resumed = false;
+        for (MapView mapView : all) {
+            mapView.onPause();
+        }
+    }
+
+    void onLowMemory() {
+        for (MapView mapView : all) {
+            mapView.onLowMemory();
+        }
+    }
+
+    /**
+     * Destroys every MapView, borrowed or not.
+     */
+    void onDestroy() {
+        for (MapView mapView : all) {
+            if (resumed) {
+                mapView.onPause();
+            }
+            mapView.onDestroy();
+        }
+        resumed = false;
+        all.clear();
+        idle.clear();
+    }
+}
@@ -26,7 +26,8 @@ import com.google.android.gms.maps.GoogleMapOptions;
 import com.google.android.gms.maps.MapView;
 import com.google.android.gms.maps.SupportMapFragment;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+
 
 /**
  * Created by annika on 2017-08-09.
@@ -34,22 +35,31 @@ import java.util.ArrayList;
 
 
 /**
- * MyListFragment gets the current collection of Reminders in the Store, via the caller AppActivity.
+ * MyListFragment gets the current collection of Reminders from the ReminderRepository.
  * The collection is rendered with a RecyclerView. It also handles actions from the RecyclerView,
  * when the user wants to change data in a Reminder.
+ *
+ * The Reminders are read a window at a time through a ReminderPager, they are never
+ * copied into the arguments or the saved state of the Fragment. The rows are updated
+ * when the repository publishes a change, whoever made it.
  */
 public class MyListFragment extends ServiceControllerFragment
         implements MyRecyclerAdapter.UserInputDelegate, View.OnClickListener {
 
     private Button newReminderButton;
-    private ArrayList<Reminder> reminders;
+    private ReminderPager reminders;
     private View view;
     private RecyclerView recyclerView;
     private MyRecyclerAdapter adapter;
-    private RecyclerView.LayoutManager layoutManager;
+    private LinearLayoutManager layoutManager;
     private String newText = "";
-    private MyRecyclerAdapter.ReminderHolder currentReminderHolder;
+    private long currentReminderId;
     private NewReminderFragmentLauncher reminderFragmentLauncher;
+    private ReminderEditor reminderEditor;
+    private MapSnapshotLoader snapshotLoader;
+    private MapViewPool mapViewPool;
+    private ReminderRepository repository;
+    private EventChannel.Listener<ReminderRepository.Change> changeListener;
 
     /**
      * Delegate interface so that MyListFragment is able to
@@ -59,6 +69,17 @@ public class MyListFragment extends ServiceControllerFragment
         void launchNewReminderFragment();
     }
 
+    /**
+     * Delegate interface so that changes made in the list
+     * are made by AppActivity, which also keeps the geofences.
+     */
+    interface ReminderEditor {
+        void removeReminder(Reminder r);
+        void moveReminder(Reminder r, Location location);
+        void changeReminderText(Reminder r, String text);
+        void changeReminderRadius(Reminder r, int radius);
+    }
+
     /**
      * Makes sure that the calling Activity implements the NewFragmentLauncher interface.
      * @param a the calling activity.
@@ -73,19 +94,16 @@ public class MyListFragment extends ServiceControllerFragment
         } catch (ClassCastException e) {
             throw new ClassCastException(a.toString() + " does not implement NewReminderFragmentLauncher interface");
         }
-    }
 
-    /**
-     * Initial creation of the Fragment. Gets the reminders sent by AppActivity.
-     * @param savedInstanceState Holds the state of the Fragment if the Fragment
-     *                           is being re-created.
-     *
-     */
-    @Override
-    public void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        Bundle bundle = getArguments();
-        reminders = bundle.getParcelableArrayList(AppActivity.KEY_REMINDERS);
+        try {
+            reminderEditor = (MyListFragment.ReminderEditor) a;
+
+        } catch (ClassCastException e) {
+            throw new ClassCastException(a.toString() + " does not implement ReminderEditor interface");
+        }
+
+        repository = ReminderRepository.get(a);
+        reminders = new ReminderPager(repository);
     }
 
     /**
@@ -102,12 +120,65 @@ public class MyListFragment extends ServiceControllerFragment
         newReminderButton = (Button) view.findViewById(R.id.new_reminder_button);
         newReminderButton.setOnClickListener(this);
 
+        snapshotLoader = new MapSnapshotLoader(getContext(),
+                (ViewGroup) view.findViewById(R.id.map_snapshot_renderer));
+        snapshotLoader.onCreate(null);
+        mapViewPool = new MapViewPool(getContext());
+
+        reminders.invalidate();
         setButtonVisibility();
         initializeRecyclerView();
 
+        changeListener = new EventChannel.Listener<ReminderRepository.Change>() {
+            @Override
+            public void onEvent(ReminderRepository.Change change) {
+                onRemindersChanged(change);
+            }
+        };
+        repository.changes.subscribe(changeListener);
+
         return view;
     }
 
+    /**
+     * Called on the main thread when the Reminders in the repository have changed.
+     * The rows of the changed Reminders are found in the window of the pager before
+     * it reads the list again, so only they have to be updated. If any of them is
+     * outside the window, the whole list is.
+     * @param change the change.
+     */
+    private void onRemindersChanged(ReminderRepository.Change change) {
+        int[] removed = new int[change.removed.length];
+        boolean found = true;
+        for (int i = 0; i < removed.length && found; i++) {
+            removed[i] = reminders.indexInWindow(change.removed[i]);
+            found = removed[i] != -1;
+        }
+
+        int[] changed = new int[change.changed.size()];
+        for (int i = 0; i < changed.length && found; i++) {
+            changed[i] = reminders.indexInWindow(change.changed.get(i).getId());
+            found = changed[i] != -1;
+        }
+
+        reminders.invalidate();
+
+        if (found) {
+            Arrays.sort(removed);
+            for (int i = removed.length - 1; i >= 0; i--) {
+                adapter.notifyItemRemoved(removed[i]);
+            }
+            for (int position : changed) {
+                adapter.notifyItemChanged(position);
+            }
+
+        } else {
+            adapter.notifyDataSetChanged();
+        }
+
+        setButtonVisibility();
+    }
+
     /**
      * The newReminderButton will only be visible
      * if there are no Reminders added. Just to fill out
@@ -115,7 +186,7 @@ public class MyListFragment extends ServiceControllerFragment
      */
     @Override
     public void setButtonVisibility() {
-        if (reminders.isEmpty()) {
+        if (reminders.size() == 0) {
             newReminderButton.setVisibility(View.VISIBLE);
 
         } else {
@@ -125,59 +196,75 @@ public class MyListFragment extends ServiceControllerFragment
 
     /**
      * Sets everything up for the recycler view using the custom MyRecyclerAdapter.
+     * It is only done once, changes are passed on to the adapter row by row.
+     * The pager is told which rows are in sight whenever the list is scrolled.
      */
-    @Override
-    public void initializeRecyclerView() {
+    private void initializeRecyclerView() {
         recyclerView = (RecyclerView) view.findViewById(R.id.my_recycler_view);
         layoutManager = new LinearLayoutManager(getActivity());
         recyclerView.setHasFixedSize(true);
         recyclerView.setLayoutManager(layoutManager);
-        adapter = new MyRecyclerAdapter(reminders, getContext(), (MyRecyclerAdapter.UserInputDelegate) this);
+        adapter = new MyRecyclerAdapter(reminders, getContext(), (MyRecyclerAdapter.UserInputDelegate) this,
+                snapshotLoader, mapViewPool);
         recyclerView.setAdapter(adapter);
+
+        recyclerView.setOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                reminders.setVisibleRange(layoutManager.findFirstVisibleItemPosition(),
+                        layoutManager.findLastVisibleItemPosition());
+            }
+        });
     }
 
     /**
-     * When Fragment being stopped, saves the reminders inside the bundle to
-     * be re-created again.
-     * @param savedInstanceState bundle to save data in.
+     * The map renderer and the pooled MapViews have to follow the lifecycle of the Fragment.
      */
     @Override
-    public void onSaveInstanceState(Bundle savedInstanceState) {
-        super.onSaveInstanceState(savedInstanceState);
+    public void onResume() {
+        super.onResume();
 
-        savedInstanceState.putParcelableArrayList(AppActivity.KEY_REMINDERS, reminders);
+        snapshotLoader.onResume();
+        mapViewPool.onResume();
     }
 
-    /**
-     * Tells the Fragment when it is fully associated with the
-     * calling activity and data can be re-stored.
-     * @param savedInstanceState saved data.
-     */
     @Override
-    public void onActivityCreated(Bundle savedInstanceState) {
-        super.onActivityCreated(savedInstanceState);
+    public void onPause() {
+        super.onPause();
 
-        if (savedInstanceState != null) {
-            reminders = savedInstanceState.getParcelableArrayList(AppActivity.KEY_REMINDERS);
-        }
+        snapshotLoader.onPause();
+        mapViewPool.onPause();
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+
+        snapshotLoader.onLowMemory();
+        mapViewPool.onLowMemory();
     }
 
     /**
-     * Clean up.
+     * The live maps, the map renderer and the change listener go with the view.
      */
     @Override
-    public void onDestroy() {
-        super.onDestroy();
+    public void onDestroyView() {
+        super.onDestroyView();
 
-        currentReminderHolder = null;
+        repository.changes.unsubscribe(changeListener);
+        adapter.releaseLiveMaps();
+        mapViewPool.onDestroy();
+        snapshotLoader.onDestroy();
     }
 
     /**
      * Launch the Google Play Services PlacePicker for chosing a new Place.
+     * Only the id of the Reminder is kept, the holder may show another one
+     * by the time the place is picked.
      */
     @Override
     public void pickNewPlace(MyRecyclerAdapter.ReminderHolder holder) {
-        currentReminderHolder = holder;
+        currentReminderId = holder.reminder.getId();
         int status = GoogleApiAvailability.getInstance().isGooglePlayServicesAvailable(getActivity());
 
         if (status == ConnectionResult.SUCCESS) {
@@ -198,6 +285,8 @@ public class MyListFragment extends ServiceControllerFragment
     /**
      * Called after a place has been picked. Builds an Alert Dialog
      * so the user can confirm the data before the Reminder is being updated.
+     * The Reminder is looked up when the user confirms, nothing happens if
+     * it has been removed or triggered since.
      * @param place the place that the user picked.
      */
     private void showConfirmationDialog(Place place) {
@@ -216,17 +305,20 @@ public class MyListFragment extends ServiceControllerFragment
         builder.setPositiveButton("OK", new DialogInterface.OnClickListener() {
             @Override
             public void onClick(DialogInterface dialogInterface, int i) {
-                currentReminderHolder.reminder.setLocationName(name);
-                currentReminderHolder.reminder.setLocation(location);
-                currentReminderHolder = null;
-                initializeRecyclerView();
+                Reminder reminder = repository.findById(currentReminderId);
+                currentReminderId = 0;
+
+                if (reminder != null) {
+                    reminder.setLocationName(name);
+                    reminderEditor.moveReminder(reminder, location);
+                }
             }
         });
 
         builder.setNegativeButton("CANCEL", new DialogInterface.OnClickListener() {
             @Override
             public void onClick(DialogInterface dialogInterface, int i) {
-                currentReminderHolder = null;
+                currentReminderId = 0;
             }
         });
 
@@ -235,12 +327,13 @@ public class MyListFragment extends ServiceControllerFragment
 
     /**
      * Builds and shows an input dialog where the user can type
-     * the new text for the reminder held by currentReminderHolder.
+     * the new text for the reminder held by the holder. The Reminder
+     * is looked up by id again when the text is entered.
      */
     @Override
     public void editText(MyRecyclerAdapter.ReminderHolder holder) {
 
-        final MyRecyclerAdapter.ReminderHolder currentHolder = holder;
+        final long id = holder.reminder.getId();
         AlertDialog.Builder builder = new AlertDialog.Builder(getContext());
         final EditText inputField = new EditText(getContext());
         inputField.setInputType(InputType.TYPE_CLASS_TEXT);
@@ -252,8 +345,11 @@ public class MyListFragment extends ServiceControllerFragment
             @Override
             public void onClick(DialogInterface dialogInterface, int i) {
                 newText = inputField.getText().toString();
-                currentHolder.reminder.setText(newText);
-                initializeRecyclerView();
+                Reminder reminder = repository.findById(id);
+
+                if (reminder != null) {
+                    reminderEditor.changeReminderText(reminder, newText);
+                }
             }
         });
 
@@ -267,6 +363,36 @@ public class MyListFragment extends ServiceControllerFragment
         builder.show();
     }
 
+    /**
+     * Shows the radius dialog for the Reminder held by the holder,
+     * it is looked up by id again when a radius is picked.
+     * @param holder the holder of the Reminder.
+     */
+    @Override
+    public void editRadius(MyRecyclerAdapter.ReminderHolder holder) {
+        final long id = holder.reminder.getId();
+
+        RadiusPickerDialog.show(getContext(), holder.reminder.getRadius(), new RadiusPickerDialog.Listener() {
+            @Override
+            public void onRadiusPicked(int radius) {
+                Reminder reminder = repository.findById(id);
+
+                if (reminder != null && radius != reminder.getRadius()) {
+                    reminderEditor.changeReminderRadius(reminder, radius);
+                }
+            }
+        });
+    }
+
+    /**
+     * Lets AppActivity remove a Reminder, the row goes when the repository publishes the change.
+     * @param r the Reminder to be removed.
+     */
+    @Override
+    public void removeReminder(Reminder r) {
+        reminderEditor.removeReminder(r);
+    }
+
     /**
      * When a change is being made from the RecyclerAdapter,
      * the appActivity needs to be notified about the change.
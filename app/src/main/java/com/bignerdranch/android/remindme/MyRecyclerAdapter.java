@@ -11,8 +11,11 @@ import android.view.animation.Transformation;
 import android.widget.ImageButton;
 import android.widget.Toast;
 
+import com.google.android.gms.maps.MapView;
+
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 /**
  * MyRecyclerAdapter is a customized RecyclerAdapter for displaying the reminders with the text and
  * the location name. It also provides the user with options for each reminder, such as edit text,
@@ -21,14 +24,22 @@ import java.util.ArrayList;
  */
 class MyRecyclerAdapter extends RecyclerView.Adapter<MyRecyclerAdapter.ReminderHolder> {
 
-    private ArrayList<Reminder> dataset;
+    private ReminderPager dataset;
     private Context context;
     private UserInputDelegate delegate;
+    private MapSnapshotLoader snapshotLoader;
+    private MapViewPool mapViewPool;
+    private LinkedHashSet<ReminderHolder> liveMapHolders;
 
-    MyRecyclerAdapter(ArrayList<Reminder> reminders, Context c, UserInputDelegate d) {
+    MyRecyclerAdapter(ReminderPager reminders, Context c, UserInputDelegate d,
+                      MapSnapshotLoader loader, MapViewPool pool) {
         dataset = reminders;
         context = c;
         delegate = d;
+        snapshotLoader = loader;
+        mapViewPool = pool;
+        liveMapHolders = new LinkedHashSet<>();
+        setHasStableIds(true);
     }
 
     /**
@@ -38,9 +49,10 @@ class MyRecyclerAdapter extends RecyclerView.Adapter<MyRecyclerAdapter.ReminderH
     interface UserInputDelegate {
         void pickNewPlace(ReminderHolder holder);
         void editText(ReminderHolder r);
+        void editRadius(ReminderHolder r);
+        void removeReminder(Reminder r);
         void notifyActivity();
         void setButtonVisibility();
-        void initializeRecyclerView();
     }
 
     /**
@@ -51,90 +63,61 @@ class MyRecyclerAdapter extends RecyclerView.Adapter<MyRecyclerAdapter.ReminderH
      */
     @Override
     public ReminderHolder onCreateViewHolder(ViewGroup parent, int viewType) {
-        ReminderListItemView mapViewListItemView = new ReminderListItemView(context);
-        mapViewListItemView.mapViewOnCreate(null);
-
-        return new ReminderHolder(mapViewListItemView);
+        return new ReminderHolder(new ReminderListItemView(context));
     }
 
     /**
      * The RecyclerView calls it to display the data at the specified position.
+     * Nothing is allocated here, the listeners and the options menu belong to the holder.
      * @param holder the current reminderholder.
      * @param position the specified position.
      */
     @Override
     public void onBindViewHolder(ReminderHolder holder, int position) {
         final Reminder reminder = dataset.get(position);
-        ReminderHolder reminderHolder = (ReminderHolder) holder;
 
         holder.setReminder(reminder);
-        reminderHolder.mapViewListItemViewOnResume();
 
         holder.setTitleView(reminder.getText());
         holder.setLocationView(reminder.getLocationName());
 //        holder.setReminderListView(reminder.listToString());
         generateCheckList(reminder);
-        setButtonListener(holder);
-        holder.position = position;
         holder.setMapVisibility();
     }
 
-    private void generateCheckList(Reminder reminder) {
-        ArrayList<String> list = reminder.getList();
-
+    /**
+     * A row that scrolls out of sight gives its live map back to the pool.
+     * @param holder the ReminderHolder that is being recycled.
+     */
+    @Override
+    public void onViewRecycled(ReminderHolder holder) {
+        holder.detachLiveMap();
+    }
 
+    /**
+     * Gives the live maps of all rows back to the pool, called when the list is destroyed.
+     */
+    void releaseLiveMaps() {
+        for (ReminderHolder holder : new ArrayList<>(liveMapHolders)) {
+            holder.detachLiveMap();
+        }
     }
 
     /**
-     * Creates the optionsButton and sets the onclickListener to it.
-     * When clicked, a little options menu pops up, where the user
-     * can choose to remove the reminder, edit the text or change the place.
-     * @param holder
+     * The id of the Reminder, so the RecyclerView can tell the rows apart
+     * when only some of them change.
+     * @param position the position of the Reminder.
+     * @return the id of the Reminder.
      */
-    private void setButtonListener(ReminderHolder holder) {
-        final Context c = this.context;
-        final ReminderHolder reminderHolder = holder;
-        final ArrayList<Reminder> reminderArrayList = dataset;
-
-        View.OnClickListener buttonListener = new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                PopupMenu popupMenu = new PopupMenu(c, reminderHolder.getOptionsButton());
-                popupMenu.inflate(R.menu.reminder_options_menu);
-
-                popupMenu.setOnMenuItemClickListener(new PopupMenu.OnMenuItemClickListener() {
-                    @Override
-                    public boolean onMenuItemClick(MenuItem item) {
-                        switch (item.getItemId()) {
-
-                            case R.id.options_menu_edit_location:
-                                delegate.pickNewPlace(reminderHolder);
-                                break;
-
-                            case R.id.options_menu_edit_text:
-                                delegate.editText(reminderHolder);
-
-
-                                notifyItemChanged(reminderHolder.position);
-                                break;
-
-                            case R.id.options_menu_delete:
-                                reminderArrayList.remove(reminderHolder.reminder);
-                                notifyDataSetChanged();
-                                delegate.setButtonVisibility();
-                                delegate.initializeRecyclerView();
-                                delegate.notifyActivity();
-                                break;
-                        }
-                        return false;
-                    }
-                });
+    @Override
+    public long getItemId(int position) {
+        return dataset.get(position).getId();
+    }
+
+    private void generateCheckList(Reminder reminder) {
+        ArrayList<String> list = reminder.getList();
 
-                popupMenu.show();
-            }
-        };
 
-        holder.setOptionsButton(buttonListener);
     }
 
     /**
@@ -150,28 +133,70 @@ class MyRecyclerAdapter extends RecyclerView.Adapter<MyRecyclerAdapter.ReminderH
      * that binds the data of the Reminder to a view for being displayed
      * inside the RecyclerView.
      */
-    class ReminderHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+    class ReminderHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener, PopupMenu.OnMenuItemClickListener {
 
         private ReminderListItemView reminderListItemView;
+        private PopupMenu popupMenu;
         Reminder reminder;
-        int position;
 
+        /**
+         * The listeners and the options menu are created once, here, and find
+         * the Reminder by the adapter position when they are used.
+         * When clicked, the optionsButton pops up a little options menu, where the user
+         * can choose to remove the reminder, edit the text or change the place.
+         * @param view the view of the row.
+         */
         ReminderHolder(ReminderListItemView view) {
             super(view);
             reminderListItemView = view;
             reminderListItemView.setOnClickListener(this);
+
+            popupMenu = new PopupMenu(context, getOptionsButton());
+            popupMenu.inflate(R.menu.reminder_options_menu);
+            popupMenu.setOnMenuItemClickListener(this);
+            setOptionsButton(this);
         }
 
         /**
          * For the user to fold and unfold the map by pressing on the menu item.
-         * The visible state is held inside the Reminder class.
+         * The visible state is held inside the Reminder class. A bound row shows
+         * the picture of the map, the live map is only for the row the user expands.
          */
         void setMapVisibility() {
-            if (reminder.isMapIsVisible()) {
-                reminderListItemView.mapView.setVisibility(View.VISIBLE);
-            } else {
-                reminderListItemView.mapView.setVisibility(View.GONE);
+            if (!reminder.isMapIsVisible()) {
+                detachLiveMap();
             }
+            reminderListItemView.setMapVisible(reminder.isMapIsVisible(), snapshotLoader);
+        }
+
+        /**
+         * Borrows a MapView from the pool. If all of them are borrowed,
+         * the row that was expanded first gives its MapView up.
+         */
+        void attachLiveMap() {
+            if (reminderListItemView.hasLiveMap()) {
+                return;
+            }
+
+            MapView mapView = mapViewPool.acquire();
+            if (mapView == null && !liveMapHolders.isEmpty()) {
+                liveMapHolders.iterator().next().detachLiveMap();
+                mapView = mapViewPool.acquire();
+            }
+
+            if (mapView != null) {
+                reminderListItemView.attachLiveMap(mapView);
+                liveMapHolders.add(this);
+            }
+        }
+
+        void detachLiveMap() {
+            MapView mapView = reminderListItemView.detachLiveMap();
+            if (mapView != null) {
+                mapViewPool.release(mapView);
+            }
+            liveMapHolders.remove(this);
         }
 
         /**
@@ -230,26 +255,72 @@ class MyRecyclerAdapter extends RecyclerView.Adapter<MyRecyclerAdapter.ReminderH
         }
 
         /**
-         * It is mandatory to forward the lifecycle events from the hosting fragment
-         * to the ReminderListItemView, or else they may get out of sync.
+         * Shows the options menu when the optionsButton is clicked.
+         * Otherwise toggles the visibility of the map, an expanded row gets a live map.
+         * @param view the optionsButton or the rootView.
          */
-        void mapViewListItemViewOnResume() {
-            if (reminderListItemView != null) {
-                reminderListItemView.mapViewOnResume();
+        @Override
+        public void onClick(View view) {
+            Reminder bound = boundReminder();
+            if (bound == null) {
+                return;
+            }
+
+            if (view == getOptionsButton()) {
+                popupMenu.show();
+                return;
+            }
+
+            bound.toggleMapVisible();
+            setMapVisibility();
+
+            if (bound.isMapIsVisible()) {
+                attachLiveMap();
             }
         }
 
         /**
-         * Toggle the visibility of the map.
-         * @param view the rootView.
+         * From the options menu.
+         * @param item the chosen item.
+         * @return false, the menu is closed.
          */
         @Override
-        public void onClick(View view) {
-            reminderListItemView.mapView.setVisibility(reminder.isMapIsVisible()
-                    ? View.GONE
-                    : View.VISIBLE);
+        public boolean onMenuItemClick(MenuItem item) {
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return false;
+            }
+
+            switch (item.getItemId()) {
+
+                case R.id.options_menu_edit_location:
+                    delegate.pickNewPlace(this);
+                    break;
+
+                case R.id.options_menu_edit_text:
+                    delegate.editText(this);
+                    break;
 
-            reminder.toggleMapVisible();
+                case R.id.options_menu_edit_radius:
+                    delegate.editRadius(this);
+                    break;
+
+                case R.id.options_menu_delete:
+                    delegate.removeReminder(dataset.get(position));
+                    delegate.setButtonVisibility();
+                    delegate.notifyActivity();
+                    break;
+            }
+            return false;
+        }
+
+        /**
+         * @return the Reminder at the adapter position of the row,
+         * or null if the row is on its way out of the list.
+         */
+        private Reminder boundReminder() {
+            int position = getAdapterPosition();
+            return position == RecyclerView.NO_POSITION ? null : dataset.get(position);
         }
     }
 }
@@ -30,6 +30,7 @@ import java.util.ArrayList;
 /**
  * NewReminderFragment simply prompts the user for information when creating a new Reminder.
  * Doing it by showing AlertDialogs and an instance of Google Play Services PlacePicker.
+ * The user types the text, picks the radius and then the place.
  */
 public class NewReminderFragment extends ServiceControllerFragment {
 
@@ -37,6 +38,7 @@ public class NewReminderFragment extends ServiceControllerFragment {
     public static final int PLACE_PICKER_REQUEST = 199;
     private String dialogInputString;
     private ArrayList<String> dialogInputList = new ArrayList<>();
+    private int dialogInputRadius = Store.MAX_DISTANCE;
     private int status;
 
     /**
@@ -45,7 +47,7 @@ public class NewReminderFragment extends ServiceControllerFragment {
      *
      */
     interface ReminderCreator {
-        void createReminder(Location l, String n, String s, ArrayList<String> list);
+        void createReminder(Location l, String n, String s, ArrayList<String> list, int radius);
     }
 
     /**
@@ -172,7 +174,7 @@ public class NewReminderFragment extends ServiceControllerFragment {
             @Override
             public void onClick(DialogInterface dialogInterface, int i) {
                 dialogInputString = inputField.getText().toString();
-                launchPlacePicker();
+                showRadiusDialog();
             }
         });
 
@@ -194,6 +196,20 @@ public class NewReminderFragment extends ServiceControllerFragment {
         builder.show();
     }
 
+    /**
+     * Lets the user pick the radius of the Reminder being created,
+     * then launches the PlacePicker.
+     */
+    private void showRadiusDialog() {
+        RadiusPickerDialog.show(getActivity(), dialogInputRadius, new RadiusPickerDialog.Listener() {
+            @Override
+            public void onRadiusPicked(int radius) {
+                dialogInputRadius = radius;
+                launchPlacePicker();
+            }
+        });
+    }
+
     /**
      * Called when the PlacePicker exits.
      * @param requestCode a request code to see where the result came from.
@@ -231,7 +247,8 @@ public class NewReminderFragment extends ServiceControllerFragment {
             @Override
             public void onClick(DialogInterface dialogInterface, int i) {
 
-                reminderCreator.createReminder(location, dialogInputString, name, dialogInputList);
+                reminderCreator.createReminder(location, dialogInputString, name, dialogInputList,
+                        dialogInputRadius);
                 dialogInputString = "";
             }
         });
@@ -252,7 +269,8 @@ public class NewReminderFragment extends ServiceControllerFragment {
      * @return A string questioning if the Reminder text and the Place is ok.
      */
     private String buildMessageString(Place place) {
-        String message = String.format("%s at %s", dialogInputString, place.getName());
+        String message = String.format("%s within %s of %s", dialogInputString,
+                Reminder.formatRadius(dialogInputRadius), place.getName());
         return message;
     }
 
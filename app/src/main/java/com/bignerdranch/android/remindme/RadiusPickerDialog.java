@@ -0,0 +1,60 @@
+package com.bignerdranch.android.remindme;
+
+import android.app.AlertDialog;
+import android.content.Context;
+import android.content.DialogInterface;
+
+/**
+ * An AlertDialog where the user picks the radius of a Reminder, among Reminder.RADIUS_CHOICES.
+ * Used when a Reminder is created and when it is edited in the list.
+ */
+final class RadiusPickerDialog {
+
+    /**
+     * Called with the radius the user picked.
+     */
+    interface Listener {
+        void onRadiusPicked(int radius);
+    }
+
+    private RadiusPickerDialog() {
+    }
+
+    /**
+     * Builds and shows the dialog, with the current radius checked.
+     * @param context the Context of the dialog.
+     * @param current the current radius in meters.
+     * @param listener called when a radius is picked, not if the dialog is cancelled.
+     */
+    static void show(Context context, int current, final Listener listener) {
+        String[] labels = new String[Reminder.RADIUS_CHOICES.length];
+        int checked = -1;
+
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = Reminder.formatRadius(Reminder.RADIUS_CHOICES[i]);
+            if (Reminder.RADIUS_CHOICES[i] == current) {
+                checked = i;
+            }
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(context);
+        builder.setTitle(R.string.radius_dialog_title);
+
+        builder.setSingleChoiceItems(labels, checked, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialogInterface, int i) {
+                dialogInterface.dismiss();
+                listener.onRadiusPicked(Reminder.RADIUS_CHOICES[i]);
+            }
+        });
+
+        builder.setNegativeButton("CANCEL", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialogInterface, int i) {
+
+            }
+        });
+
+        builder.show();
+    }
+}
@@ -4,8 +4,10 @@ import android.location.Location;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Created by annika on 2017-08-14.
@@ -15,9 +17,21 @@ import java.util.List;
  * Reminder holds the information about a reminder:
  * the text message, a location and a radius for the Reminder to be triggered,
  * a locationName for a better user experience.
+ *
+ * A Reminder read from file can be lazy: only the id, the coordinates and the radius
+ * are decoded, which is all the proximity check needs. The text, the location name
+ * and the list stay encoded in the file data until one of them is used.
  */
 public class Reminder implements Parcelable {
 
+    /**
+     * The radii the user can pick from, in meters.
+     */
+    static final int[] RADIUS_CHOICES = {20, 50, 75, 150, 300, 500, 1000, 2000};
+
+    private long id;
+    private double latitude;
+    private double longitude;
     private Location location;
     private String text;
     private ArrayList<String> list;
@@ -25,8 +39,16 @@ public class Reminder implements Parcelable {
     private int radius;
     private boolean mapIsVisible;
 
+    private int slot = -1;
+
+    private ByteBuffer encoded;
+    private int encodedOffset;
+    private int encodedLength;
+
     public Reminder(Location l, String t, String ln, int r, ArrayList<String> li) {
         location = l;
+        latitude = l.getLatitude();
+        longitude = l.getLongitude();
         text = t;
         locationName = ln;
         radius = r;
@@ -38,25 +60,159 @@ public class Reminder implements Parcelable {
 //        list.add("ost");
     }
 
+    /**
+     * Creates a Reminder from file data, see ReminderCodec.
+     * @param id the id.
+     * @param lat the latitude.
+     * @param lon the longitude.
+     * @param r the radius.
+     */
+    Reminder(long id, double lat, double lon, int r) {
+        this.id = id;
+        latitude = lat;
+        longitude = lon;
+        radius = r;
+    }
+
+    /**
+     * Sets the text, location name and list of a Reminder created from file data.
+     */
+    void setStrings(String t, String ln, ArrayList<String> li) {
+        text = t;
+        locationName = ln;
+        list = li;
+    }
+
+    /**
+     * Leaves the text, location name and list encoded until they are used.
+     * @param data the file data, it must not change afterwards.
+     * @param offset where the encoded text starts.
+     * @param length the number of bytes up to the end of the record.
+     */
+    void setEncoded(ByteBuffer data, int offset, int length) {
+        encoded = data;
+        encodedOffset = offset;
+        encodedLength = length;
+    }
+
+    /**
+     * Lets ReminderCodec copy the still encoded data when it is written again,
+     * instead of decoding it.
+     * @return the encoded text, location name and list, or null if they have been decoded.
+     */
+    synchronized ByteBuffer getEncoded() {
+        if (encoded == null) {
+            return null;
+        }
+
+        ByteBuffer data = encoded.duplicate();
+        data.position(encodedOffset);
+        data.limit(encodedOffset + encodedLength);
+        return data;
+    }
+
+    /**
+     * Decodes the text, location name and list the first time one of them is used.
+     * It is synchronized since the Reminder can also be written on the I/O thread.
+     */
+    private synchronized void decode() {
+        if (encoded != null) {
+            ByteBuffer data = getEncoded();
+            encoded = null;
+            ReminderCodec.decodeStrings(data, this);
+        }
+    }
+
+    /**
+     * @return the id given by the Store, 0 if the Reminder is not stored yet.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @param newId the id, only set by the Store and when reading from file.
+     */
+    void setId(long newId) {
+        id = newId;
+    }
+
+    /**
+     * @return the slot of the Reminder in the arrays of the Store, -1 if it has none.
+     */
+    int getSlot() {
+        return slot;
+    }
+
+    /**
+     * @param newSlot the slot, only set by the Store.
+     */
+    void setSlot(int newSlot) {
+        slot = newSlot;
+    }
+
     /**
      * @param newLocation new Location to be set as the location.
      */
     public void setLocation(Location newLocation) {
         location = newLocation;
+        latitude = newLocation.getLatitude();
+        longitude = newLocation.getLongitude();
+    }
+
+    /**
+     * @return the location, created the first time it is needed.
+     */
+    private Location getLocation() {
+        if (location == null) {
+            location = new Location("");
+            location.setLatitude(latitude);
+            location.setLongitude(longitude);
+        }
+        return location;
     }
 
     public double getLatitude() {
-        return location.getLatitude();
+        return latitude;
     }
 
     public double getLongitude() {
-        return location.getLongitude();
+        return longitude;
+    }
+
+    /**
+     * @return the radius in meters.
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * @param newRadius the new radius in meters, set through the Store
+     *                  or it will be looked for with the old one.
+     */
+    void setRadius(int newRadius) {
+        radius = newRadius;
+    }
+
+    /**
+     * @param meters a radius.
+     * @return the radius for the user, like "150 m" or "2 km".
+     */
+    static String formatRadius(int meters) {
+        if (meters >= 1000 && meters % 100 == 0) {
+            return meters % 1000 == 0
+                    ? (meters / 1000) + " km"
+                    : String.format(Locale.US, "%.1f km", meters / 1000.0);
+        }
+        return meters + " m";
     }
 
     /**
      * @param newName new name to be set as locationName.
      */
     public void setLocationName(String newName) {
+        decode();
         locationName = newName;
     }
 
@@ -64,27 +220,58 @@ public class Reminder implements Parcelable {
      * @param newText new text to be set as text.
      */
     public void setText(String newText) {
+        decode();
         text = newText;
     }
 
     public ArrayList<String> getList() {
+        decode();
         return list;
     }
 
     /**
      * @return locationName.
      */
-    public String getLocationName() { return locationName; }
+    public String getLocationName() {
+        decode();
+        return locationName;
+    }
 
     /**
      * @return text.
      */
     public String getText() {
+        decode();
         return text;
     }
 
 
+    /**
+     * Two Reminders with the same place key and text key are the same Reminder to the user.
+     * The place key is the coordinates rounded to 5 decimals, about a meter, and the radius,
+     * it is made without the Reminder so a lazy one doesn't have to be decoded.
+     * @param lat the latitude.
+     * @param lon the longitude.
+     * @param radius the radius.
+     * @return the place key.
+     */
+    static String placeKey(double lat, double lon, int radius) {
+        return new StringBuilder(32)
+                .append(Math.round(lat * 1e5)).append(',')
+                .append(Math.round(lon * 1e5)).append(',')
+                .append(radius)
+                .toString();
+    }
+
+    /**
+     * @return the text without case and extra white space, see placeKey.
+     */
+    String textKey() {
+        return getText() == null ? "" : getText().trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
     public String listToString() {
+        decode();
         String s = "";
 
         if (list != null) {
@@ -96,23 +283,13 @@ public class Reminder implements Parcelable {
         return s;
     }
 
-    private String serializeList() {
-        String s = "";
-
-        for (String item : list) {
-            s += item + ",";
-        }
-
-        return s;
-    }
-
     /**
      * @param other a Location to compare with.
      * @return true if the other Location is located inside the
      * radius of this.locatino.
      */
     public boolean isNear(Location other) {
-        if (this.location.distanceTo(other) < radius) {
+        if (getLocation().distanceTo(other) < radius) {
             return true;
         }
         return false;
@@ -133,10 +310,14 @@ public class Reminder implements Parcelable {
      */
     private Reminder(Parcel in) {
         location = Location.CREATOR.createFromParcel(in);
+        latitude = location.getLatitude();
+        longitude = location.getLongitude();
         radius = in.readInt();
         text = in.readString();
         locationName = in.readString();
         mapIsVisible = in.readInt() == 1;
+        id = in.readLong();
+        list = in.createStringArrayList();
     }
 
     /**
@@ -155,11 +336,14 @@ public class Reminder implements Parcelable {
      */
     @Override
     public void writeToParcel(Parcel parcel, int i) {
-        location.writeToParcel(parcel, i);
+        decode();
+        getLocation().writeToParcel(parcel, i);
         parcel.writeInt(radius);
         parcel.writeString(text);
         parcel.writeString(locationName);
         parcel.writeInt(mapIsVisible ? 1 : 0);
+        parcel.writeLong(id);
+        parcel.writeStringList(list);
     }
 
     /**
@@ -192,14 +376,4 @@ public class Reminder implements Parcelable {
             return new Reminder[size];
         }
     };
-
-    /**
-     * @return the member variables as one string for internal storage.
-     */
-    public String serialize() {
-        String lat = location.getLatitude() + "";
-        String lon = location.getLongitude() + "";
-
-        return lat + "," + lon + "," + text + "," + locationName + "," + radius + "," + serializeList() + '_';
-    }
 }
@@ -0,0 +1,407 @@
+package com.bignerdranch.android.remindme;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reads and writes the Reminders of a Store in the binary file format.
+ * The file starts with a header: a magic number, the format version and the
+ * number of Reminders. Every Reminder follows as a record prefixed with its length
+ * in bytes, so a reader can skip fields added by a later version.
+ * A record holds the id as a long (since version 2), the latitude and longitude as doubles,
+ * the radius as an int, then the text, the location name and the list items as
+ * length-prefixed UTF-8 strings.
+ */
+final class ReminderCodec {
+
+    static final int MAGIC = 0x524D4E44;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 12;
+
+    /**
+     * No record is near this size, a length above it means the stream is broken.
+     */
+    static final int MAX_RECORD_SIZE = 1 << 20;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int NULL_STRING = -1;
+
+    /**
+     * Strings in a mapped file can't be decoded in place, they are copied here first.
+     */
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[256];
+        }
+    };
+
+    private ReminderCodec() { }
+
+    /**
+     * Writes the header and all Reminders.
+     * @param reminders the Reminders to be written.
+     * @param stream the stream to write to, should be buffered.
+     * @throws IOException if the stream fails.
+     */
+    static void write(Collection<Reminder> reminders, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(128);
+        DataOutputStream record = new DataOutputStream(recordBytes);
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(reminders.size());
+
+        for (Reminder r : reminders) {
+            recordBytes.reset();
+            encode(r, record);
+            out.writeInt(recordBytes.size());
+            recordBytes.writeTo(out);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Reads Reminders from a file by mapping it into memory, the records are decoded
+     * straight from the mapped pages without copying the file into a buffer first.
+     * The Reminders are lazy, their text, location name and list are decoded from
+     * the mapping when they are first used.
+     * Files in the old text format are handed over to the stream reader.
+     * @param file the file to read from, positioned at the start.
+     * @param out the list the Reminders are added to.
+     * @return true if the data was not in the current format, and should be written again.
+     * @throws IOException if the file fails or the data is broken.
+     */
+    static boolean read(FileInputStream file, List<Reminder> out) throws IOException {
+        FileChannel channel = file.getChannel();
+        long size = channel.size();
+
+        if (size < HEADER_SIZE) {
+            return read((InputStream) file, out);
+        }
+
+        MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (data.getInt() != MAGIC) {
+            return read((InputStream) file, out);
+        }
+
+        int version = data.getInt();
+        if (version > VERSION) {
+            throw new IOException("Unsupported data version " + version);
+        }
+
+        int count = data.getInt();
+
+        try {
+            for (int i = 0; i < count; i++) {
+                int length = data.getInt();
+                if (length < 0 || length > data.remaining()) {
+                    throw new IOException("Broken record length " + length);
+                }
+                int end = data.position() + length;
+
+                out.add(decodeLazy(data, version, end));
+                data.position(end);
+            }
+
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Broken data file", e);
+        }
+
+        return version < VERSION;
+    }
+
+    /**
+     * Reads Reminders from a stream. A file in the old text format is recognized
+     * by the missing magic number and is read with Store.deSerialize.
+     * Reminders from before version 2 have no id, it is left as 0.
+     * @param stream the stream to read from.
+     * @param out the list the Reminders are added to.
+     * @return true if the data was not in the current format, and should be written again.
+     * @throws IOException if the stream fails or the data is broken.
+     */
+    static boolean read(InputStream stream, List<Reminder> out) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(stream);
+        DataInputStream in = new DataInputStream(buffered);
+        buffered.mark(4);
+
+        if (!hasMagic(buffered)) {
+            buffered.reset();
+            readLegacy(buffered, out);
+            return true;
+        }
+
+        int version = in.readInt();
+        if (version > VERSION) {
+            throw new IOException("Unsupported data version " + version);
+        }
+
+        int count = in.readInt();
+        byte[] buffer = new byte[256];
+
+        for (int i = 0; i < count; i++) {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_RECORD_SIZE) {
+                throw new IOException("Broken record length " + length);
+            }
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+
+            in.readFully(buffer, 0, length);
+            try {
+                out.add(decode(ByteBuffer.wrap(buffer, 0, length), version));
+
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Broken data file", e);
+            }
+        }
+
+        return version < VERSION;
+    }
+
+    /**
+     * Writes the fields of one Reminder, without the length prefix.
+     * @param r the Reminder.
+     * @param out the stream to write to.
+     * @throws IOException if the stream fails.
+     */
+    static void encode(Reminder r, DataOutputStream out) throws IOException {
+        out.writeLong(r.getId());
+        out.writeDouble(r.getLatitude());
+        out.writeDouble(r.getLongitude());
+        out.writeInt(r.getRadius());
+
+        ByteBuffer encoded = r.getEncoded();
+        if (encoded != null) {
+            copy(encoded, out);
+            return;
+        }
+
+        writeString(r.getText(), out);
+        writeString(r.getLocationName(), out);
+
+        ArrayList<String> list = r.getList();
+        out.writeInt(list == null ? 0 : list.size());
+
+        if (list != null) {
+            for (String item : list) {
+                writeString(item, out);
+            }
+        }
+    }
+
+    /**
+     * Builds a Reminder from one record. Bytes after the known fields are ignored.
+     * @param record the record, positioned after the length prefix.
+     * @param version the format version the record was written with.
+     * @return the new Reminder.
+     * @throws BufferUnderflowException if the record is cut off.
+     * @throws IllegalArgumentException if a length in the record is broken.
+     */
+    static Reminder decode(ByteBuffer record, int version) {
+        Reminder r = decodeHeader(record, version);
+        decodeStrings(record, r);
+        return r;
+    }
+
+    /**
+     * Builds a lazy Reminder from one record, only the fields before the text are decoded.
+     * The lengths of the strings are checked here, so decoding them later, in a getter
+     * of the Reminder, can't fail.
+     * @param data the file data, positioned after the length prefix. It must not change
+     *             as long as the Reminder is in use.
+     * @param version the format version the record was written with.
+     * @param end the position where the record ends.
+     * @return the new Reminder.
+     * @throws BufferUnderflowException if the record is cut off.
+     * @throws IllegalArgumentException if a length in the record is broken.
+     */
+    static Reminder decodeLazy(ByteBuffer data, int version, int end) {
+        Reminder r = decodeHeader(data, version);
+        checkStrings(data, end);
+        r.setEncoded(data, data.position(), end - data.position());
+        return r;
+    }
+
+    /**
+     * Decodes the text, the location name and the list into a Reminder.
+     * @param in the record, positioned at the text.
+     * @param r the Reminder.
+     */
+    static void decodeStrings(ByteBuffer in, Reminder r) {
+        String text = readString(in);
+        String locationName = readString(in);
+
+        int size = readCount(in);
+        ArrayList<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readString(in));
+        }
+
+        r.setStrings(text, locationName, list);
+    }
+
+    /**
+     * Walks over the text, the location name and the list without decoding them.
+     * @param data the record, positioned at the text. The position is left as it is.
+     * @param end the position where the record ends.
+     */
+    private static void checkStrings(ByteBuffer data, int end) {
+        ByteBuffer in = data.duplicate();
+        in.limit(end);
+
+        skipString(in);
+        skipString(in);
+
+        int size = readCount(in);
+        for (int i = 0; i < size; i++) {
+            skipString(in);
+        }
+    }
+
+    private static Reminder decodeHeader(ByteBuffer record, int version) {
+        long id = version >= 2 ? record.getLong() : 0;
+        double latitude = record.getDouble();
+        double longitude = record.getDouble();
+        int radius = record.getInt();
+
+        return new Reminder(id, latitude, longitude, radius);
+    }
+
+    /**
+     * Writes data that is still encoded as it is, through the scratch array.
+     */
+    private static void copy(ByteBuffer data, DataOutputStream out) throws IOException {
+        byte[] bytes = SCRATCH.get();
+
+        while (data.hasRemaining()) {
+            int length = Math.min(bytes.length, data.remaining());
+            data.get(bytes, 0, length);
+            out.write(bytes, 0, length);
+        }
+    }
+
+    private static void writeString(String s, DataOutputStream out) throws IOException {
+        if (s == null) {
+            out.writeInt(NULL_STRING);
+            return;
+        }
+
+        byte[] bytes = s.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readLength(in);
+        if (length == NULL_STRING) {
+            return null;
+        }
+
+        String s;
+        if (in.hasArray()) {
+            s = new String(in.array(), in.arrayOffset() + in.position(), length, UTF_8);
+            in.position(in.position() + length);
+
+        } else {
+            byte[] bytes = SCRATCH.get();
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+                SCRATCH.set(bytes);
+            }
+
+            in.get(bytes, 0, length);
+            s = new String(bytes, 0, length, UTF_8);
+        }
+
+        return s;
+    }
+
+    private static void skipString(ByteBuffer in) {
+        int length = readLength(in);
+        if (length != NULL_STRING) {
+            in.position(in.position() + length);
+        }
+    }
+
+    /**
+     * @return the length of a string, NULL_STRING or one that fits in what is left.
+     */
+    private static int readLength(ByteBuffer in) {
+        int length = in.getInt();
+        if (length != NULL_STRING && (length < 0 || length > in.remaining())) {
+            throw new IllegalArgumentException("Broken string length " + length);
+        }
+        return length;
+    }
+
+    /**
+     * @return the number of list items, each takes at least the 4 bytes of its length.
+     */
+    private static int readCount(ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / 4) {
+            throw new IllegalArgumentException("Broken list size " + count);
+        }
+        return count;
+    }
+
+    private static boolean hasMagic(InputStream in) throws IOException {
+        int magic = 0;
+
+        for (int i = 0; i < 4; i++) {
+            int b = in.read();
+            if (b < 0) {
+                return false;
+            }
+            magic = (magic << 8) | b;
+        }
+
+        return magic == MAGIC;
+    }
+
+    /**
+     * The old format was written as one line of text, see Store.deSerialize.
+     * It was not escaped, a text with a comma or an underscore broke the file.
+     * That is reported like any other broken file.
+     */
+    private static void readLegacy(InputStream in, List<Reminder> out) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(in));
+        StringBuilder stringBuilder = new StringBuilder();
+        String nextLine;
+
+        while ((nextLine = bufferedReader.readLine()) != null) {
+            stringBuilder.append(nextLine);
+        }
+
+        String data = stringBuilder.toString();
+        if (!data.isEmpty()) {
+            Store store = new Store();
+            try {
+                store.deSerialize(data);
+            } catch (RuntimeException e) {
+                throw new IOException("Broken legacy data file", e);
+            }
+            out.addAll(store.getReminders());
+        }
+    }
+}
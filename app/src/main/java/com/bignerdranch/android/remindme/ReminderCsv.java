@@ -0,0 +1,241 @@
+package com.bignerdranch.android.remindme;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * The file format of ReminderTransfer: comma separated values, one Reminder per row.
+ *
+ *     latitude,longitude,radius,text,place,item,item,...
+ *
+ * The checklist items are the columns after the place, there can be any number of them.
+ * A value with a comma, a quote or a line break is put in quotes, with its quotes
+ * doubled. The first row may be the header, an empty radius is Store.MAX_DISTANCE and
+ * an empty place is the coordinates. A row with a radius larger than any the user
+ * can pick is skipped. Files exported before the place column was added have the
+ * header latitude,longitude,radius,text,items and are read without it.
+ */
+final class ReminderCsv {
+
+    static final String HEADER = "latitude,longitude,radius,text,place,items";
+
+    private static final int PLACE = 4;
+
+    /**
+     * The largest radius the user can pick, a larger one is not imported. It would make
+     * every proximity check search a huge area, and the geofence couldn't be added.
+     */
+    private static final int MAX_RADIUS = Reminder.RADIUS_CHOICES[Reminder.RADIUS_CHOICES.length - 1];
+
+    private ReminderCsv() {
+    }
+
+    /**
+     * Reads the rows one at a time, the file is never read as a whole.
+     */
+    static final class Parser implements Closeable {
+
+        private Reader in;
+        private StringBuilder value;
+        private ArrayList<String> columns;
+        private int next = -2;
+        private int row;
+        private int skipped;
+        private int firstItem = PLACE + 1;
+
+        /**
+         * @param in the file, it should be buffered.
+         */
+        Parser(Reader in) {
+            this.in = in;
+            value = new StringBuilder();
+            columns = new ArrayList<>();
+        }
+
+        /**
+         * Reads Reminders until one is found. Rows that are not Reminders are skipped.
+         * @return the next Reminder, or null at the end of the file.
+         * @throws IOException if the file can't be read.
+         */
+        Reminder next() throws IOException {
+            while (readRow()) {
+                row++;
+                Reminder r = toReminder(columns, firstItem);
+
+                if (r != null) {
+                    return r;
+                }
+                if (row > 1 || !columns.get(0).trim().equalsIgnoreCase("latitude")) {
+                    skipped++;
+                } else if (columns.size() > PLACE && columns.get(PLACE).trim().equalsIgnoreCase("items")) {
+                    firstItem = PLACE;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the number of rows that were skipped, the header is not counted.
+         */
+        int getSkipped() {
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        /**
+         * Reads the columns of the next row that is not empty.
+         * @return false at the end of the file.
+         */
+        private boolean readRow() throws IOException {
+            columns.clear();
+            value.setLength(0);
+            boolean quoted = false;
+            boolean empty = true;
+
+            if (next == -2) {
+                next = in.read();
+            }
+
+            while (next != -1) {
+                int c = next;
+                next = in.read();
+
+                if (quoted) {
+                    if (c == '"' && next == '"') {
+                        value.append('"');
+                        next = in.read();
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        value.append((char) c);
+                    }
+
+                } else if (c == '"') {
+                    quoted = true;
+                    empty = false;
+
+                } else if (c == ',') {
+                    columns.add(value.toString());
+                    value.setLength(0);
+                    empty = false;
+
+                } else if (c == '\n' || c == '\r') {
+                    if (c == '\r' && next == '\n') {
+                        next = in.read();
+                    }
+                    if (!empty || value.length() > 0) {
+                        break;
+                    }
+
+                } else {
+                    value.append((char) c);
+                    empty = false;
+                }
+            }
+
+            if (empty && value.length() == 0) {
+                return false;
+            }
+            columns.add(value.toString());
+            return true;
+        }
+    }
+
+    /**
+     * @param columns the columns of a row.
+     * @param firstItem the column of the first item, the place is before it if there is room.
+     * @return the Reminder, or null if the row isn't one.
+     */
+    static Reminder toReminder(ArrayList<String> columns, int firstItem) {
+        if (columns.size() < 4) {
+            return null;
+        }
+
+        double latitude;
+        double longitude;
+        double radius;
+
+        try {
+            latitude = Double.parseDouble(columns.get(0).trim());
+            longitude = Double.parseDouble(columns.get(1).trim());
+            String r = columns.get(2).trim();
+            radius = r.isEmpty() ? Store.MAX_DISTANCE : Math.round(Double.parseDouble(r));
+
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        // The negated checks also reject NaN.
+        if (!(Math.abs(latitude) <= 90) || !(Math.abs(longitude) <= 180)
+                || !(radius > 0 && radius <= MAX_RADIUS)) {
+            return null;
+        }
+
+        ArrayList<String> items = new ArrayList<>();
+        for (int i = firstItem; i < columns.size(); i++) {
+            if (!columns.get(i).isEmpty()) {
+                items.add(columns.get(i));
+            }
+        }
+
+        String place = firstItem > PLACE && columns.size() > PLACE ? columns.get(PLACE).trim() : "";
+        if (place.isEmpty()) {
+            place = String.format(Locale.US, "%.5f, %.5f", latitude, longitude);
+        }
+
+        Reminder reminder = new Reminder(0, latitude, longitude, (int) radius);
+        reminder.setStrings(columns.get(3), place, items);
+        return reminder;
+    }
+
+    /**
+     * Writes a Reminder as a row.
+     * @param r the Reminder.
+     * @param out the file.
+     * @throws IOException if the file can't be written.
+     */
+    static void write(Reminder r, Writer out) throws IOException {
+        out.write(Double.toString(r.getLatitude()));
+        out.write(',');
+        out.write(Double.toString(r.getLongitude()));
+        out.write(',');
+        out.write(Integer.toString(r.getRadius()));
+        out.write(',');
+        writeValue(r.getText(), out);
+        out.write(',');
+        writeValue(r.getLocationName(), out);
+
+        ArrayList<String> items = r.getList();
+        if (items != null) {
+            for (String item : items) {
+                out.write(',');
+                writeValue(item, out);
+            }
+        }
+        out.write('\n');
+    }
+
+    private static void writeValue(String value, Writer out) throws IOException {
+        if (value == null) {
+            return;
+        }
+
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+                && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            out.write(value);
+            return;
+        }
+
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,294 @@
+package com.bignerdranch.android.remindme;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingRequest;
+import com.google.android.gms.location.LocationServices;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * Registers every Reminder as a geofence with Google Play services, so the system
+ * wakes up GeofenceReceiver when the device enters the radius of a Reminder,
+ * and the GPS doesn't have to be polled.
+ *
+ * The geofences are identified by the id of the Reminder. Changes made before
+ * the connection to Play services is ready are collected and sent when it is.
+ * If geofencing can't be used, because Play services is missing, location is turned
+ * off or there are more Reminders than the system allows, the Listener is told, and
+ * the Reminders have to be watched with CurrentLocationService instead.
+ */
+class ReminderGeofences implements GoogleApiClient.ConnectionCallbacks,
+        GoogleApiClient.OnConnectionFailedListener {
+
+    /**
+     * The most geofences an app may have registered at the same time.
+     */
+    static final int MAX_GEOFENCES = 100;
+
+    private GoogleApiClient client;
+    private PendingIntent transitionIntent;
+    private Listener listener;
+    private boolean available = true;
+
+    private HashSet<String> registered;
+    private LinkedHashMap<String, Geofence> pendingAdds;
+    private LinkedHashSet<String> pendingRemoves;
+    private boolean pendingClear;
+
+    /**
+     * Told on the main thread when the geofences have stopped working.
+     */
+    interface Listener {
+        void onGeofencingUnavailable();
+    }
+
+    /**
+     * @param context the Context, the application Context is kept.
+     * @param listener told when geofencing can't be used.
+     */
+    ReminderGeofences(Context context, Listener listener) {
+        Context appContext = context.getApplicationContext();
+        this.listener = listener;
+
+        registered = new HashSet<>();
+        pendingAdds = new LinkedHashMap<>();
+        pendingRemoves = new LinkedHashSet<>();
+
+        Intent intent = new Intent(appContext, GeofenceReceiver.class);
+        transitionIntent = PendingIntent.getBroadcast(appContext, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        client = new GoogleApiClient.Builder(appContext)
+                .addApi(LocationServices.API)
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .build();
+    }
+
+    void connect() {
+        client.connect();
+    }
+
+    /**
+     * The registered geofences stay active after this.
+     */
+    void disconnect() {
+        client.disconnect();
+    }
+
+    /**
+     * @return true as long as the geofences are working.
+     */
+    boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Registers a Reminder, or updates its geofence if it has been moved.
+     * @param r the Reminder.
+     */
+    void add(Reminder r) {
+        if (!available) {
+            return;
+        }
+
+        queueAdd(r);
+        flush();
+    }
+
+    /**
+     * @param batch the Reminders to be registered, with one request.
+     */
+    void addAll(Collection<Reminder> batch) {
+        if (!available) {
+            return;
+        }
+
+        for (Reminder r : batch) {
+            queueAdd(r);
+        }
+        flush();
+    }
+
+    /**
+     * Removes every geofence of the app and registers the Reminders. A Reminder that was
+     * triggered while the app was closed still has a geofence, this gets rid of it.
+     * @param all all Reminders of the Store.
+     */
+    void replaceAll(Collection<Reminder> all) {
+        if (!available) {
+            return;
+        }
+
+        pendingClear = true;
+        pendingAdds.clear();
+        pendingRemoves.clear();
+        registered.clear();
+        addAll(all);
+    }
+
+    /**
+     * @param r the Reminder whose geofence is removed.
+     */
+    void remove(Reminder r) {
+        if (!available) {
+            return;
+        }
+
+        queueRemove(r);
+        flush();
+    }
+
+    /**
+     * @param batch the Reminders whose geofences are removed, with one request.
+     */
+    void removeAll(Collection<Reminder> batch) {
+        if (!available) {
+            return;
+        }
+
+        for (Reminder r : batch) {
+            queueRemove(r);
+        }
+        flush();
+    }
+
+    /**
+     * @param ids the ids of the Reminders whose geofences are removed, with one request.
+     */
+    void removeAll(long[] ids) {
+        if (!available) {
+            return;
+        }
+
+        for (long id : ids) {
+            String key = String.valueOf(id);
+            pendingAdds.remove(key);
+            pendingRemoves.add(key);
+        }
+        flush();
+    }
+
+    /**
+     * Stops using geofences, called when the system reports that they don't work.
+     * The Listener is told about it.
+     */
+    void setUnavailable() {
+        if (!available) {
+            return;
+        }
+
+        available = false;
+        pendingClear = false;
+        pendingAdds.clear();
+        pendingRemoves.clear();
+
+        if (client.isConnected()) {
+            LocationServices.GeofencingApi.removeGeofences(client, transitionIntent);
+        }
+        registered.clear();
+
+        listener.onGeofencingUnavailable();
+    }
+
+    @Override
+    public void onConnected(@Nullable Bundle bundle) {
+        flush();
+    }
+
+    @Override
+    public void onConnectionSuspended(int cause) {
+        // The client connects again by itself.
+    }
+
+    @Override
+    public void onConnectionFailed(@NonNull ConnectionResult result) {
+        setUnavailable();
+    }
+
+    /**
+     * Sends the collected changes to Play services, if it is connected.
+     */
+    private void flush() {
+        if (!client.isConnected()) {
+            return;
+        }
+
+        if (pendingClear) {
+            LocationServices.GeofencingApi.removeGeofences(client, transitionIntent);
+            pendingClear = false;
+        }
+
+        if (!pendingRemoves.isEmpty()) {
+            registered.removeAll(pendingRemoves);
+            LocationServices.GeofencingApi.removeGeofences(client, new ArrayList<>(pendingRemoves));
+            pendingRemoves.clear();
+        }
+
+        if (!pendingAdds.isEmpty()) {
+            registered.addAll(pendingAdds.keySet());
+
+            if (registered.size() > MAX_GEOFENCES) {
+                setUnavailable();
+                return;
+            }
+
+            GeofencingRequest request = new GeofencingRequest.Builder()
+                    .setInitialTrigger(GeofencingRequest.INITIAL_TRIGGER_ENTER)
+                    .addGeofences(new ArrayList<>(pendingAdds.values()))
+                    .build();
+            pendingAdds.clear();
+
+            try {
+                //noinspection MissingPermission
+                LocationServices.GeofencingApi.addGeofences(client, request, transitionIntent)
+                        .setResultCallback(new ResultCallback<Status>() {
+                            @Override
+                            public void onResult(@NonNull Status status) {
+                                if (!status.isSuccess()) {
+                                    setUnavailable();
+                                }
+                            }
+                        });
+
+            } catch (SecurityException e) {
+                setUnavailable();
+            }
+        }
+    }
+
+    private void queueAdd(Reminder r) {
+        String id = String.valueOf(r.getId());
+        pendingRemoves.remove(id);
+        pendingAdds.put(id, toGeofence(r));
+    }
+
+    private void queueRemove(Reminder r) {
+        String id = String.valueOf(r.getId());
+        pendingAdds.remove(id);
+        pendingRemoves.add(id);
+    }
+
+    private static Geofence toGeofence(Reminder r) {
+        return new Geofence.Builder()
+                .setRequestId(String.valueOf(r.getId()))
+                .setCircularRegion(r.getLatitude(), r.getLongitude(), r.getRadius())
+                .setExpirationDuration(Geofence.NEVER_EXPIRE)
+                .setTransitionTypes(Geofence.GEOFENCE_TRANSITION_ENTER)
+                .build();
+    }
+}
@@ -0,0 +1,546 @@
+package com.bignerdranch.android.remindme;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.AtomicFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Makes the changes of the Store durable without rewriting the whole data file.
+ * The Reminders are kept in a snapshot file, written with ReminderCodec, and every
+ * change after that is appended to a journal file as one entry. When the journal
+ * has grown as large as the Store, it is compacted into a new snapshot.
+ *
+ * A journal entry is the length of the entry, an operation, the id of the Reminder
+ * and, for OP_PUT, the Reminder record. Replaying an entry twice gives the same
+ * result, so a crash between writing a snapshot and deleting the journal is harmless.
+ *
+ * All file I/O runs on one background thread that is shared by the whole process,
+ * so the main thread never waits for the disk and two journals can't write at
+ * the same time. The entries are encoded on the calling thread and collected
+ * until the I/O thread gets to them, a burst of changes becomes one write.
+ *
+ * Only one journal owns the files, the one of ReminderRepository, which makes all
+ * changes of the Reminders. Nobody else reads or writes them.
+ *
+ * If the files can't be read, they are never replaced: the snapshot is not written
+ * again and the journal is not compacted, the changes are only appended. The Reminders
+ * that could be read are used, and the error is handed to the LoadCallback. A broken
+ * entry at the end of the journal is not such an error, it is cut off, see replay.
+ */
+class ReminderJournal {
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final int MIN_COMPACT_ENTRIES = 64;
+
+    private static final String SNAPSHOT_FILENAME = "remindme_data";
+    private static final String JOURNAL_FILENAME = "remindme_journal";
+
+    private static final ExecutorService IO = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ReminderJournal");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    private Store store;
+    private AtomicFile snapshotFile;
+    private File journalFile;
+    private ByteArrayOutputStream entryBytes;
+    private DataOutputStream entry;
+    private int entries;
+
+    /**
+     * Set on the I/O thread when the files couldn't be read, before the LoadCallback is called.
+     */
+    private volatile boolean readFailed;
+
+    private final Object lock = new Object();
+    private ByteArrayOutputStream pending;
+    private boolean flushScheduled;
+    private int generation;
+
+    /**
+     * Only used on the I/O thread.
+     */
+    private FileOutputStream journalStream;
+
+    /**
+     * Entries that were taken from pending but couldn't be written, they are written
+     * before the next ones. Only used on the I/O thread.
+     */
+    private ByteArrayOutputStream unwritten;
+
+    /**
+     * Called when the Reminders have been read from file.
+     */
+    interface LoadCallback {
+
+        /**
+         * @param reminders the Reminders that could be read.
+         * @param error the error if the files couldn't be read completely, otherwise null.
+         */
+        void onLoaded(ArrayList<Reminder> reminders, IOException error);
+    }
+
+    /**
+     * @param store the Store whose changes are written.
+     * @param snapshot the file with the snapshot.
+     * @param journal the file the changes are appended to.
+     */
+    ReminderJournal(Store store, File snapshot, File journal) {
+        this.store = store;
+        snapshotFile = new AtomicFile(snapshot);
+        journalFile = journal;
+        entryBytes = new ByteArrayOutputStream(128);
+        entry = new DataOutputStream(entryBytes);
+        pending = new ByteArrayOutputStream(1024);
+        unwritten = new ByteArrayOutputStream();
+    }
+
+    /**
+     * @param context a Context.
+     * @param store the Store whose changes are written.
+     * @return a journal on the files of the app.
+     */
+    static ReminderJournal create(Context context, Store store) {
+        return new ReminderJournal(store, context.getFileStreamPath(SNAPSHOT_FILENAME),
+                context.getFileStreamPath(JOURNAL_FILENAME));
+    }
+
+    /**
+     * Reads the snapshot and replays the journal on the I/O thread. If the journal
+     * had any entries, or the snapshot was in an older format, a new snapshot is written,
+     * unless reading failed.
+     * The Reminders are not added to the Store, that is up to the callback.
+     * @param callback called on the main thread with the Reminders, in the order of the list.
+     */
+    void load(final LoadCallback callback) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+
+        IO.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ArrayList<Reminder> reminders = new ArrayList<>();
+                final IOException error = read(reminders);
+
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onLoaded(reminders, error);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Runs on the I/O thread. A snapshot that can't be read is left as it is,
+     * so are the journal entries that were replayed on top of it.
+     * @param result the list the Reminders of the snapshot with the journal applied are added to.
+     * @return the first error, null if the files were read.
+     */
+    private IOException read(ArrayList<Reminder> result) {
+        ArrayList<Reminder> snapshot = new ArrayList<>();
+        LinkedHashMap<Long, Reminder> reminders = new LinkedHashMap<>();
+        IOException error = null;
+        boolean outdated = false;
+        int replayed = 0;
+
+        try {
+            FileInputStream fis = snapshotFile.openRead();
+
+            try {
+                outdated = ReminderCodec.read(fis, snapshot);
+            } finally {
+                fis.close();
+            }
+
+        } catch (FileNotFoundException e) {
+            // Nothing saved yet.
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            error = e;
+        }
+
+        long lastId = 0;
+
+        for (Reminder r : snapshot) {
+            lastId = Math.max(lastId, r.getId());
+        }
+
+        for (Reminder r : snapshot) {
+            if (r.getId() == 0) {
+                r.setId(++lastId);
+            }
+            reminders.put(r.getId(), r);
+        }
+
+        try {
+            replayed = replay(reminders);
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (error == null) {
+                error = e;
+            }
+        }
+
+        result.addAll(reminders.values());
+
+        if (error != null) {
+            readFailed = true;
+
+        } else if (outdated || replayed > 0) {
+            writeSnapshot(result, new byte[0]);
+        }
+
+        return error;
+    }
+
+    /**
+     * Writes a new or changed Reminder to the journal.
+     * @param r the Reminder.
+     */
+    void put(Reminder r) {
+        putAll(Collections.singletonList(r));
+    }
+
+    /**
+     * Writes several new or changed Reminders to the journal. The journal is compacted
+     * at most once, after the whole batch, so a large import is not snapshotted over and over.
+     * @param batch the Reminders.
+     */
+    void putAll(Collection<Reminder> batch) {
+        for (Reminder r : batch) {
+            try {
+                beginEntry(OP_PUT, r.getId());
+                ReminderCodec.encode(r, entry);
+                append();
+
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        compactIfLarge();
+    }
+
+    /**
+     * Writes the removal of a Reminder to the journal.
+     * @param r the Reminder.
+     */
+    void remove(Reminder r) {
+        removeAll(Collections.singletonList(r));
+    }
+
+    /**
+     * Writes the removal of several Reminders to the journal, compacted at most once.
+     * @param batch the Reminders.
+     */
+    void removeAll(Collection<Reminder> batch) {
+        for (Reminder r : batch) {
+            try {
+                beginEntry(OP_REMOVE, r.getId());
+                append();
+
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        compactIfLarge();
+    }
+
+    /**
+     * Writes all Reminders of the Store to a new snapshot and empties the journal.
+     * The list is copied here, entries added after this call end up in the new journal.
+     * Nothing happens if the files couldn't be read, the Store doesn't have everything in them.
+     */
+    void compact() {
+        if (readFailed) {
+            return;
+        }
+
+        final ArrayList<Reminder> reminders = new ArrayList<>(store.getReminders());
+        final byte[] carried;
+        entries = 0;
+
+        // The collected entries are part of the snapshot, and a flush that is
+        // already waiting must not write later entries into the old journal.
+        // They are kept until the snapshot is written, in case it can't be.
+        synchronized (lock) {
+            carried = pending.toByteArray();
+            pending.reset();
+            flushScheduled = false;
+            generation++;
+        }
+
+        IO.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeSnapshot(reminders, carried);
+            }
+        });
+    }
+
+    /**
+     * Writes the entries that are left and closes the journal file,
+     * it is opened again by the next change.
+     */
+    void close() {
+        final int current;
+        synchronized (lock) {
+            current = generation;
+        }
+
+        IO.execute(new Runnable() {
+            @Override
+            public void run() {
+                flush(current);
+                closeStream();
+            }
+        });
+    }
+
+    /**
+     * Runs on the I/O thread. Replaces the snapshot and deletes the journal,
+     * all entries before this are part of the new snapshot. If the snapshot can't
+     * be written, the old one and the journal are kept, and the entries of the
+     * new snapshot that aren't in the journal yet are appended to it.
+     * @param reminders the Reminders to be written.
+     * @param carried the entries that were collected but not written when the snapshot was taken.
+     */
+    private void writeSnapshot(ArrayList<Reminder> reminders, byte[] carried) {
+        FileOutputStream outputStream = null;
+
+        try {
+            outputStream = snapshotFile.startWrite();
+            ReminderCodec.write(reminders, new BufferedOutputStream(outputStream));
+            snapshotFile.finishWrite(outputStream);
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (outputStream != null) {
+                snapshotFile.failWrite(outputStream);
+            }
+            writeJournal(carried);
+            return;
+        }
+
+        unwritten.reset();
+        closeStream();
+        journalFile.delete();
+    }
+
+    /**
+     * Runs on the I/O thread. Appends all collected entries with a single write.
+     * The write reaches the system before the next task runs, so the changes survive
+     * the process being killed.
+     * @param flushGeneration the generation when the flush was scheduled, a flush from
+     *                        before the last compaction does nothing.
+     */
+    private void flush(int flushGeneration) {
+        byte[] batch;
+
+        synchronized (lock) {
+            if (flushGeneration != generation) {
+                return;
+            }
+            flushScheduled = false;
+            batch = pending.toByteArray();
+            pending.reset();
+        }
+
+        writeJournal(batch);
+    }
+
+    /**
+     * Runs on the I/O thread. Appends the entries that couldn't be written before
+     * and the batch. If that fails, the journal is cut back to where it was, so it
+     * doesn't end in half an entry, and the entries are tried again with the next batch.
+     * @param batch the entries.
+     */
+    private void writeJournal(byte[] batch) {
+        unwritten.write(batch, 0, batch.length);
+        if (unwritten.size() == 0) {
+            return;
+        }
+
+        long length = -1;
+
+        try {
+            if (journalStream == null) {
+                journalStream = new FileOutputStream(journalFile, true);
+            }
+            length = journalStream.getChannel().size();
+            journalStream.write(unwritten.toByteArray());
+            unwritten.reset();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (length >= 0) {
+                try {
+                    journalStream.getChannel().truncate(length);
+                } catch (IOException truncateFailed) {
+                    truncateFailed.printStackTrace();
+                }
+            }
+            closeStream();
+        }
+    }
+
+    private void closeStream() {
+        if (journalStream != null) {
+            try {
+                journalStream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            journalStream = null;
+        }
+    }
+
+    private void beginEntry(byte op, long id) throws IOException {
+        entryBytes.reset();
+        entry.writeInt(0);
+        entry.writeByte(op);
+        entry.writeLong(id);
+    }
+
+    /**
+     * @return the entry with its length filled in.
+     */
+    private byte[] finishEntry() {
+        byte[] bytes = entryBytes.toByteArray();
+        ByteBuffer.wrap(bytes).putInt(0, bytes.length - 4);
+        return bytes;
+    }
+
+    /**
+     * Hands the entry over to the I/O thread.
+     * A flush is only scheduled if there isn't one waiting already.
+     */
+    private void append() {
+        byte[] bytes = finishEntry();
+
+        synchronized (lock) {
+            pending.write(bytes, 0, bytes.length);
+
+            if (!flushScheduled) {
+                flushScheduled = true;
+                final int current = generation;
+
+                IO.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush(current);
+                    }
+                });
+            }
+        }
+        entries++;
+    }
+
+    /**
+     * Compacts the journal once it has as many entries as the Store has Reminders.
+     */
+    private void compactIfLarge() {
+        if (entries >= Math.max(MIN_COMPACT_ENTRIES, store.size())) {
+            compact();
+        }
+    }
+
+    /**
+     * Runs on the I/O thread. Applies the entries of the journal to the Reminders
+     * read from the snapshot.
+     * An entry that was only partly written when the process died ends the replay,
+     * and so does one with a length or record that is broken. The journal is then cut
+     * off after the last entry that was replayed, or new entries would be appended
+     * after the broken one and never be replayed.
+     * @param reminders the Reminders by id, in the order of the list.
+     * @return the number of entries that were replayed.
+     */
+    private int replay(LinkedHashMap<Long, Reminder> reminders) throws IOException {
+        if (!journalFile.exists()) {
+            return 0;
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+        byte[] buffer = new byte[256];
+        int count = 0;
+        long replayed = 0;
+
+        try {
+            while (true) {
+                int length = in.readInt();
+                if (length < 9 || length > ReminderCodec.MAX_RECORD_SIZE + 9) {
+                    break;
+                }
+                if (length > buffer.length) {
+                    buffer = new byte[Math.max(length, buffer.length * 2)];
+                }
+
+                in.readFully(buffer, 0, length);
+                ByteBuffer record = ByteBuffer.wrap(buffer, 0, length);
+                byte op = record.get();
+                long id = record.getLong();
+
+                if (op == OP_PUT) {
+                    Reminder r;
+                    try {
+                        r = ReminderCodec.decode(record, ReminderCodec.VERSION);
+                    } catch (BufferUnderflowException | IllegalArgumentException e) {
+                        break;
+                    }
+                    reminders.put(id, r);
+
+                } else if (op == OP_REMOVE) {
+                    reminders.remove(id);
+                }
+                count++;
+                replayed += 4 + length;
+            }
+
+        } catch (EOFException e) {
+            // The end of the journal, or an entry that was cut off.
+        } finally {
+            in.close();
+        }
+
+        if (replayed < journalFile.length()) {
+            RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+            try {
+                file.setLength(replayed);
+            } finally {
+                file.close();
+            }
+        }
+
+        return count;
+    }
+}
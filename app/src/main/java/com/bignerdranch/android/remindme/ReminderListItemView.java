@@ -2,11 +2,12 @@ package com.bignerdranch.android.remindme;
 
 import android.content.Context;
 import android.graphics.Typeface;
-import android.os.Bundle;
 import android.util.AttributeSet;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.widget.FrameLayout;
 import android.widget.ImageButton;
+import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
@@ -16,6 +17,7 @@ import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.MapView;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
 
 /**
@@ -25,6 +27,10 @@ import com.google.android.gms.maps.model.MarkerOptions;
 /**
  * This View class holds the references to the Views and Widgets that is used to represent
  * a Reminder and edit the same.
+ *
+ * The map of the Reminder is shown as a picture from MapSnapshotLoader. A live MapView, which
+ * is expensive to create and to keep running, is only borrowed from MapViewPool when the user
+ * expands the row.
  */
 public class ReminderListItemView extends RelativeLayout implements OnMapReadyCallback {
 
@@ -35,7 +41,10 @@ public class ReminderListItemView extends RelativeLayout implements OnMapReadyCa
     private LinearLayout checkListView;
     private ImageButton optionsButton;
     private Reminder reminder;
-    public MapView mapView;
+    private FrameLayout mapContainer;
+    private ImageView snapshotView;
+    private double snapshotLatitude, snapshotLongitude;
+    private MapView mapView;
 
     public ReminderListItemView(Context context) {
         this(context, null);
@@ -47,8 +56,8 @@ public class ReminderListItemView extends RelativeLayout implements OnMapReadyCa
 
         this.context = context;
         view = LayoutInflater.from(context).inflate(R.layout.reminder_view, this);
-        mapView = (MapView) view.findViewById(R.id.map_view);
-        mapView.getMapAsync(this);
+        mapContainer = (FrameLayout) view.findViewById(R.id.map_container);
+        snapshotView = (ImageView) view.findViewById(R.id.map_snapshot);
         titleView = (TextView) view.findViewById(R.id.reminder_title_view);
         locationView = (TextView) view.findViewById(R.id.reminder_location_view);
         optionsButton = (ImageButton) view.findViewById(R.id.options_menu_button);
@@ -56,28 +65,6 @@ public class ReminderListItemView extends RelativeLayout implements OnMapReadyCa
         checkListView = (LinearLayout) view.findViewById(R.id.checklist_view);
     }
 
-    /**
-     * Called from MyRecyclerAdapter's onCreateViewHolder.
-     * To prevent mapView to live it's own life and possibly be destroyed,
-     * mapView needs to be in sync with the underlying fragment.
-     */
-    public void mapViewOnCreate(Bundle savedInstanceState) {
-        if (mapView != null) {
-            mapView.onCreate(savedInstanceState);
-        }
-    }
-
-    /**
-     * Called from MyRecyclerAdapter's onBindViewHolder, via
-     * ReminderHolder. To prevent mapView to live it's own life and possibly be destroyed,
-     * mapView needs to be in sync with the underlying fragment.
-     */
-    public void mapViewOnResume() {
-        if (mapView != null) {
-            mapView.onResume();
-        }
-    }
-
     /**
      * @param text sets the title of the reminder to the titleView.
      */
@@ -100,10 +87,12 @@ public class ReminderListItemView extends RelativeLayout implements OnMapReadyCa
     }
 
     /**
+     * A recycled or changed row has to show the pin of the Reminder it is bound to.
      * @param r the Reminder to be displayed.
      */
     public void setReminder(Reminder r) {
         reminder = r;
+        pinMap();
     }
 
     /**
@@ -114,15 +103,119 @@ public class ReminderListItemView extends RelativeLayout implements OnMapReadyCa
     }
 
     /**
-     * Places a pin at the location of the reminder.
+     * Shows the picture of the map, or hides the map.
+     * @param visible true if the map is to be shown.
+     * @param loader gives the picture of the map.
+     */
+    public void setMapVisible(boolean visible, MapSnapshotLoader loader) {
+        if (visible && reminder != null) {
+            // A row bound again to the same place keeps its picture, without asking the loader.
+            if (snapshotView.getDrawable() == null
+                    || reminder.getLatitude() != snapshotLatitude
+                    || reminder.getLongitude() != snapshotLongitude) {
+                snapshotLatitude = reminder.getLatitude();
+                snapshotLongitude = reminder.getLongitude();
+                loader.load(snapshotLatitude, snapshotLongitude, snapshotView);
+            }
+            mapContainer.setVisibility(View.VISIBLE);
+
+        } else {
+            mapContainer.setVisibility(View.GONE);
+        }
+    }
+
+    /**
+     * Puts a live MapView over the picture, so the user can move around in the map.
+     * @param pooled a MapView from MapViewPool, it is kept until detachLiveMap() is called.
+     */
+    public void attachLiveMap(MapView pooled) {
+        if (mapView != null) {
+            return;
+        }
+
+        final MapView attached = pooled;
+        mapView = pooled;
+        mapContainer.addView(mapView, new FrameLayout.LayoutParams(
+                FrameLayout.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.MATCH_PARENT));
+
+        mapView.getMapAsync(new OnMapReadyCallback() {
+            @Override
+            public void onMapReady(GoogleMap googleMap) {
+                // The MapView may have moved on to another row before its map was ready.
+                if (mapView == attached) {
+                    ReminderListItemView.this.onMapReady(googleMap);
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes the live MapView, the picture is shown again.
+     * @return the MapView to be given back to MapViewPool, or null if there was none.
+     */
+    public MapView detachLiveMap() {
+        MapView detached = mapView;
+        if (detached == null) {
+            return null;
+        }
+
+        mapContainer.removeView(detached);
+        mapView = null;
+        googleMap = null;
+
+        return detached;
+    }
+
+    /**
+     * @return true if the row has a live MapView.
+     */
+    public boolean hasLiveMap() {
+        return mapView != null;
+    }
+
+    /**
+     * Places a pin at the location of the reminder. A MapView has one Marker, kept in its tag,
+     * since it goes from row to row. It is moved instead of added again, and the camera is
+     * left alone if the pin is already in place.
      */
     public void pinMap() {
+        if (googleMap == null || reminder == null) {
+            return;
+        }
+
         LatLng location = new LatLng(reminder.getLatitude(), reminder.getLongitude());
+        Marker marker = getMarker();
+
+        if (marker == null) {
+            mapView.setTag(addMarker(mapView, googleMap, location));
+
+        } else if (location.equals(marker.getPosition())) {
+            return;
 
-        if (googleMap != null && reminder != null) {
-            googleMap.addMarker(new MarkerOptions().position(location));
-            googleMap.moveCamera(CameraUpdateFactory.newLatLngZoom(location, 15));
+        } else {
+            marker.setPosition(location);
         }
+
+        googleMap.moveCamera(CameraUpdateFactory.newLatLngZoom(location, MapSnapshotCache.ZOOM));
+    }
+
+    /**
+     * Adds the one Marker of a MapView to its map. Every Marker of the list is added here,
+     * so the benchmarks can count them per map.
+     * @param target the MapView.
+     * @param map the GoogleMap of the MapView.
+     * @param location where the Marker is put.
+     * @return the Marker.
+     */
+    Marker addMarker(MapView target, GoogleMap map, LatLng location) {
+        return map.addMarker(new MarkerOptions().position(location));
+    }
+
+    /**
+     * @return the Marker of the live MapView, or null if there is none yet.
+     */
+    Marker getMarker() {
+        return mapView != null ? (Marker) mapView.getTag() : null;
     }
 
     /**
@@ -0,0 +1,81 @@
+package com.bignerdranch.android.remindme;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.support.v4.app.NotificationCompat;
+
+import java.util.List;
+
+/**
+ * Sends the push notification for triggered Reminders. It doesn't need the Activity,
+ * so it can be called from CurrentLocationService and GeofenceReceiver.
+ */
+final class ReminderNotifier {
+
+    private static final int NOTIFICATION_ID = 321123;
+
+    private ReminderNotifier() { }
+
+    /**
+     * Constructs and sending one notification for the triggered Reminders.
+     * With more than one Reminder, every text gets a line of its own.
+     * @param context a Context.
+     * @param triggered the Reminders to be displayed in the notification.
+     */
+    static void notify(Context context, List<Reminder> triggered) {
+        String message = triggered.get(0).getText();
+
+        if (triggered.size() > 1) {
+            NotificationCompat.InboxStyle inboxStyle = new NotificationCompat.InboxStyle();
+
+            for (Reminder r : triggered) {
+                inboxStyle.addLine(r.getText());
+            }
+
+            message = triggered.size() + " reminders";
+            notify(context, message, inboxStyle);
+
+        } else {
+            notify(context, message, null);
+        }
+    }
+
+    /**
+     * Constructs and sending a notification with the message String.
+     * @param context a Context.
+     * @param message The message to be displayed in the notification.
+     * @param style a style for the expanded notification, or null.
+     */
+    private static void notify(Context context, String message, NotificationCompat.Style style) {
+        NotificationCompat.Builder notificationBuilder =
+                new NotificationCompat.Builder(context)
+                        .setSmallIcon(R.drawable.notification_yellow)
+                        .setAutoCancel(true)
+                        .setTicker("Ticker")
+                        .setWhen(System.currentTimeMillis())
+                        .setContentTitle("Reminder")
+                        .setContentText(message)
+                        .setDefaults(Notification.DEFAULT_ALL)
+                        .setPriority(Notification.PRIORITY_MAX)
+                ;
+
+        Intent resultIntent = new Intent(context, AppActivity.class);
+        resultIntent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+
+
+        PendingIntent pendingIntent =
+                PendingIntent.getActivity(context, 0, resultIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        notificationBuilder.setContentIntent(pendingIntent);
+
+        if (style != null) {
+            notificationBuilder.setStyle(style);
+        }
+
+        NotificationManager nm = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        nm.notify(NOTIFICATION_ID, notificationBuilder.build());
+    }
+}
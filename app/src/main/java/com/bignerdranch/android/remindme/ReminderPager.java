@@ -0,0 +1,120 @@
+package com.bignerdranch.android.remindme;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Gives the list the Reminders it shows, a window at a time, read by range from the
+ * ReminderRepository. The window covers the visible rows and a margin on both sides,
+ * so the rows about to be scrolled in are ready. The Reminders in the window are
+ * materialized, their text, location name and list are decoded, when the window is
+ * read and not when a row is bound.
+ *
+ * The Reminders are all in memory, but most of them are read from file and stay
+ * encoded until they are shown, the window is what keeps the others that way.
+ * It also tells which rows a change concerns, see indexInWindow, so a change
+ * rebinds those rows and not the whole list.
+ */
+class ReminderPager {
+
+    /**
+     * The number of rows read ahead of the visible ones, in both directions.
+     */
+    static final int PREFETCH = 10;
+
+    private Source source;
+    private List<Reminder> window;
+    private int start;
+
+    /**
+     * Where the Reminders are read from, the ReminderRepository.
+     */
+    interface Source {
+        int getReminderCount();
+        List<Reminder> getReminders(int from, int to);
+    }
+
+    /**
+     * @param source where the Reminders are read from.
+     */
+    ReminderPager(Source source) {
+        this.source = source;
+        window = Collections.emptyList();
+    }
+
+    /**
+     * @return the number of Reminders.
+     */
+    int size() {
+        return source.getReminderCount();
+    }
+
+    /**
+     * @param position the position of a Reminder in the list.
+     * @return the Reminder, the window is moved to it if it isn't in it.
+     */
+    Reminder get(int position) {
+        if (!covers(position, position)) {
+            read(position, position);
+        }
+        return window.get(position - start);
+    }
+
+    /**
+     * Moves the window if the visible rows and the margin around them aren't in it.
+     * It is read with a margin twice as large, so it is not read again for every row scrolled.
+     * @param first the first visible position.
+     * @param last the last visible position.
+     */
+    void setVisibleRange(int first, int last) {
+        if (first < 0 || last < first) {
+            return;
+        }
+
+        int size = size();
+        int from = Math.max(0, first - PREFETCH);
+        int to = Math.min(size - 1, last + PREFETCH);
+
+        if (from <= to && !covers(from, to)) {
+            read(first, last);
+        }
+    }
+
+    /**
+     * @param id the id of a Reminder.
+     * @return the position of the Reminder if it is in the window, otherwise -1.
+     */
+    int indexInWindow(long id) {
+        for (int i = 0; i < window.size(); i++) {
+            if (window.get(i).getId() == id) {
+                return start + i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Drops the window, called when the Reminders have changed.
+     */
+    void invalidate() {
+        window = Collections.emptyList();
+        start = 0;
+    }
+
+    private boolean covers(int from, int to) {
+        return from >= start && to < start + window.size();
+    }
+
+    private void read(int first, int last) {
+        int size = size();
+        int from = Math.max(0, first - 2 * PREFETCH);
+        int to = Math.min(size, last + 1 + 2 * PREFETCH);
+
+        window = source.getReminders(from, to);
+        start = from;
+
+        for (int i = 0; i < window.size(); i++) {
+            window.get(i).getText();
+        }
+    }
+}
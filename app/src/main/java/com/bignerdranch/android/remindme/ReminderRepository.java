@@ -0,0 +1,368 @@
+package com.bignerdranch.android.remindme;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Reminders of the app, one instance for the whole process, shared by AppActivity,
+ * its Fragments and CurrentLocationService. It owns the Store and the ReminderJournal
+ * that writes it to file, so there is only one copy of the Reminders to keep consistent,
+ * and nothing has to be parcelled between them.
+ *
+ * Readers get a snapshot, a list that is never changed. It is copied from the Store
+ * when it is asked for after a change, and not on every change, so a batch of changes
+ * that nobody reads in between, or a triggered Reminder removed while no list is shown,
+ * costs no copy. Every change is also published on changes, on the main thread.
+ *
+ * All changes are made on the main thread, and the repository is the only one that
+ * writes the Reminders to file. Reminders triggered by ReminderTrigger are removed here
+ * as well, whether an Activity is open or not. The Store is a ConcurrentStore, the
+ * trigger searches its snapshot on the trigger thread.
+ */
+final class ReminderRepository implements ReminderPager.Source {
+
+    /**
+     * A change of the Reminders.
+     */
+    static final class Change {
+
+        /**
+         * The Reminders that were added or changed.
+         */
+        final List<Reminder> changed;
+
+        /**
+         * The ids of the Reminders that were removed.
+         */
+        final long[] removed;
+
+        Change(List<Reminder> changed, long[] removed) {
+            this.changed = changed;
+            this.removed = removed;
+        }
+    }
+
+    private static final long[] NO_IDS = new long[0];
+
+    private static ReminderRepository instance;
+
+    /**
+     * Every change of the Reminders, published on the main thread.
+     */
+    final EventChannel<Change> changes = new EventChannel<>();
+
+    private ConcurrentStore store;
+    private ReminderJournal journal;
+    private Handler mainHandler;
+
+    /**
+     * The Reminders in order, null when they have changed since it was last asked for.
+     * Only used on the main thread.
+     */
+    private List<Reminder> snapshot;
+
+    private boolean loaded;
+    private boolean loading;
+    private IOException loadError;
+    private ArrayList<Runnable> waiting;
+
+    /**
+     * @param context a Context.
+     * @return the repository of the process.
+     */
+    static synchronized ReminderRepository get(Context context) {
+        if (instance == null) {
+            instance = new ReminderRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ReminderRepository(Context context) {
+        store = new ConcurrentStore();
+        journal = ReminderJournal.create(context, store);
+        mainHandler = new Handler(Looper.getMainLooper());
+        waiting = new ArrayList<>();
+
+        ReminderTrigger.TRIGGERED.subscribe(new EventChannel.Listener<long[]>() {
+            @Override
+            public void onEvent(final long[] ids) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        removeTriggered(ids);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Reads the Reminders from file the first time it is called.
+     * @param onLoaded run on the main thread when the Reminders are read, right away if they are.
+     */
+    void load(Runnable onLoaded) {
+        if (loaded) {
+            onLoaded.run();
+            return;
+        }
+
+        waiting.add(onLoaded);
+        if (loading) {
+            return;
+        }
+        loading = true;
+
+        journal.load(new ReminderJournal.LoadCallback() {
+            @Override
+            public void onLoaded(ArrayList<Reminder> reminders, IOException error) {
+                store.restoreAll(reminders);
+                loadError = error;
+                loaded = true;
+                loading = false;
+                publish(Collections.unmodifiableList(reminders), NO_IDS);
+
+                ArrayList<Runnable> ready = new ArrayList<>(waiting);
+                waiting.clear();
+                for (Runnable runnable : ready) {
+                    runnable.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * A new Reminder can't be added before the Reminders are read,
+     * it could get the id of a Reminder that is still on file.
+     * @return true if the Reminders are read.
+     */
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * The Reminders on file that couldn't be read are not lost, the journal leaves
+     * the files as they are, but the user should know that some are missing.
+     * @return the error of reading the Reminders, null if there was none or it is already taken.
+     */
+    IOException takeLoadError() {
+        IOException error = loadError;
+        loadError = null;
+        return error;
+    }
+
+    /**
+     * Called on the main thread, the list can then be read on any thread.
+     * @return the Reminders, the list never changes.
+     */
+    List<Reminder> snapshot() {
+        if (snapshot == null) {
+            snapshot = Collections.unmodifiableList(new ArrayList<>(store.getReminders()));
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the Reminders as a Store that never changes, for the proximity checks
+     * of ReminderTrigger. Can be called on any thread, it must not be changed.
+     */
+    Store storeSnapshot() {
+        return store.snapshot();
+    }
+
+    /**
+     * @return true if there are no Reminders.
+     */
+    boolean isEmpty() {
+        return store.size() == 0;
+    }
+
+    /**
+     * From ReminderPager.Source, counted in the same snapshot the ranges are read from.
+     * @return the number of Reminders.
+     */
+    @Override
+    public int getReminderCount() {
+        return snapshot().size();
+    }
+
+    /**
+     * From ReminderPager.Source, a view of the snapshot is enough since it never changes.
+     * @param from the first index.
+     * @param to the index after the last one.
+     * @return the Reminders in the range.
+     */
+    @Override
+    public List<Reminder> getReminders(int from, int to) {
+        return snapshot().subList(from, to);
+    }
+
+    /**
+     * @param ids the ids of Reminders.
+     * @return the Reminders with the ids, ids that are not found are skipped.
+     */
+    List<Reminder> findAllById(long[] ids) {
+        return store.findAllById(ids);
+    }
+
+    /**
+     * A dialog that edits a Reminder looks it up again when it is done,
+     * it may have been removed or triggered in the meantime.
+     * @param id the id of a Reminder.
+     * @return the Reminder with the id, null if it is not stored anymore.
+     */
+    Reminder findById(long id) {
+        return store.findById(id);
+    }
+
+    /**
+     * Adds a new Reminder.
+     * @param r the Reminder.
+     * @return the Reminder if it was added, null if it already was.
+     */
+    Reminder add(Reminder r) {
+        if (store.add(r) == null) {
+            return null;
+        }
+
+        journal.put(r);
+        publish(Collections.singletonList(r), NO_IDS);
+        return r;
+    }
+
+    /**
+     * Adds a batch of an import, see ReminderTransfer. Duplicates are skipped.
+     * The batch is published as one change, the list must not see Reminders
+     * it hasn't been told about.
+     * @param batch the new Reminders.
+     * @return the Reminders that were added.
+     */
+    List<Reminder> importBatch(Collection<Reminder> batch) {
+        List<Reminder> added = store.addAll(batch);
+        if (added.isEmpty()) {
+            return added;
+        }
+
+        journal.putAll(added);
+        publish(Collections.unmodifiableList(added), NO_IDS);
+        return added;
+    }
+
+    /**
+     * @param r the Reminder to be removed.
+     */
+    void remove(Reminder r) {
+        removeAll(Collections.singletonList(r));
+    }
+
+    /**
+     * Removes several Reminders with one change.
+     * @param batch the Reminders to be removed.
+     */
+    void removeAll(Collection<Reminder> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        store.removeAll(batch);
+        journal.removeAll(batch);
+
+        long[] ids = new long[batch.size()];
+        int i = 0;
+        for (Reminder r : batch) {
+            ids[i++] = r.getId();
+        }
+        publish(Collections.<Reminder>emptyList(), ids);
+    }
+
+    /**
+     * Gives a Reminder a new Location.
+     * @param r the Reminder.
+     * @param location the new Location.
+     * @return true if it was moved, false if the Reminder is not stored anymore.
+     */
+    boolean move(Reminder r, Location location) {
+        if (!isStored(r)) {
+            return false;
+        }
+
+        store.move(r, location);
+        journal.put(r);
+        publish(Collections.singletonList(r), NO_IDS);
+        return true;
+    }
+
+    /**
+     * Gives a Reminder a new text.
+     * @param r the Reminder.
+     * @param text the new text.
+     * @return true if it was changed, false if the Reminder is not stored anymore.
+     */
+    boolean changeText(Reminder r, String text) {
+        if (!isStored(r)) {
+            return false;
+        }
+
+        store.setText(r, text);
+        journal.put(r);
+        publish(Collections.singletonList(r), NO_IDS);
+        return true;
+    }
+
+    /**
+     * Gives a Reminder a new radius.
+     * @param r the Reminder.
+     * @param radius the new radius in meters.
+     * @return true if it was changed, false if the Reminder is not stored anymore.
+     */
+    boolean changeRadius(Reminder r, int radius) {
+        if (!isStored(r)) {
+            return false;
+        }
+
+        store.setRadius(r, radius);
+        journal.put(r);
+        publish(Collections.singletonList(r), NO_IDS);
+        return true;
+    }
+
+    /**
+     * A Reminder that was removed must not be written to the journal again,
+     * it would be back the next time the Reminders are read.
+     * @param r a Reminder.
+     * @return true if it is the Reminder stored with its id.
+     */
+    private boolean isStored(Reminder r) {
+        return r.getId() != 0 && store.findById(r.getId()) == r;
+    }
+
+    /**
+     * The triggered Reminders are already notified, they are removed from the Store
+     * and the journal. If it isn't read yet, it is done when it is.
+     * Then the trigger can forget that it has fired them.
+     */
+    private void removeTriggered(final long[] ids) {
+        load(new Runnable() {
+            @Override
+            public void run() {
+                removeAll(store.findAllById(ids));
+                ReminderTrigger.removed(ids);
+            }
+        });
+    }
+
+    /**
+     * Drops the snapshot, the next one is copied when it is asked for, and tells the listeners.
+     */
+    private void publish(List<Reminder> changed, long[] removed) {
+        snapshot = null;
+        changes.publish(new Change(changed, removed));
+    }
+}
@@ -0,0 +1,208 @@
+package com.bignerdranch.android.remindme;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.AtomicFile;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Imports Reminders from a file and exports them to one, in the format of ReminderCsv.
+ *
+ * An import is read as a stream on a thread of its own. Every BATCH_SIZE Reminders are
+ * handed to the ReminderRepository on the main thread, which adds them to the Store and
+ * the journal with one call, and published as one change, so the list and the service
+ * are updated once for every batch and not for every Reminder.
+ */
+final class ReminderTransfer {
+
+    static final int BATCH_SIZE = 200;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ReminderTransfer");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    /**
+     * Called on the main thread when an import or export is done.
+     */
+    interface Callback {
+
+        /**
+         * @param count the number of Reminders imported or exported.
+         * @param skipped the number of rows that were not Reminders or already stored.
+         * @param error the error if the file couldn't be read or written, otherwise null.
+         */
+        void onFinished(int count, int skipped, IOException error);
+    }
+
+    private ReminderTransfer() {
+    }
+
+    /**
+     * Imports the Reminders of a file. The Reminders that were read before an error
+     * are kept.
+     * @param context a Context.
+     * @param uri the file.
+     * @param callback called when the import is done.
+     */
+    static void importFrom(Context context, final Uri uri, final Callback callback) {
+        final Context appContext = context.getApplicationContext();
+        final ReminderRepository repository = ReminderRepository.get(appContext);
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+        // Only used on the main thread.
+        final ArrayList<Reminder> added = new ArrayList<>();
+
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                int read = 0;
+                int skipped = 0;
+                IOException error = null;
+                ReminderCsv.Parser parser = null;
+
+                try {
+                    InputStream in = appContext.getContentResolver().openInputStream(uri);
+                    if (in == null) {
+                        throw new IOException("can't open " + uri);
+                    }
+                    parser = new ReminderCsv.Parser(new BufferedReader(new InputStreamReader(in, UTF_8)));
+
+                    ArrayList<Reminder> batch = new ArrayList<>(BATCH_SIZE);
+                    Reminder r;
+                    while ((r = parser.next()) != null) {
+                        batch.add(r);
+                        read++;
+
+                        if (batch.size() == BATCH_SIZE) {
+                            post(batch);
+                            batch = new ArrayList<>(BATCH_SIZE);
+                        }
+                    }
+                    post(batch);
+
+                } catch (IOException e) {
+                    error = e;
+
+                } finally {
+                    if (parser != null) {
+                        skipped = parser.getSkipped();
+                        try {
+                            parser.close();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+
+                final int rows = read;
+                final int bad = skipped;
+                final IOException failure = error;
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        repository.load(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.onFinished(added.size(), bad + rows - added.size(), failure);
+                            }
+                        });
+                    }
+                });
+            }
+
+            /**
+             * Hands a batch to the repository, after the Reminders on file are read.
+             */
+            private void post(final List<Reminder> batch) {
+                if (batch.isEmpty()) {
+                    return;
+                }
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        repository.load(new Runnable() {
+                            @Override
+                            public void run() {
+                                added.addAll(repository.importBatch(batch));
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Exports all Reminders to a file, which is replaced only when it is written completely.
+     * The Reminders must be read, see ReminderRepository.isLoaded.
+     * @param context a Context.
+     * @param file the file.
+     * @param callback called when the export is done.
+     */
+    static void exportTo(Context context, File file, final Callback callback) {
+        final List<Reminder> reminders = ReminderRepository.get(context).snapshot();
+        final AtomicFile atomicFile = new AtomicFile(file);
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                IOException error = null;
+                FileOutputStream stream = null;
+
+                try {
+                    stream = atomicFile.startWrite();
+                    Writer out = new BufferedWriter(new OutputStreamWriter(stream, UTF_8));
+                    out.write(ReminderCsv.HEADER);
+                    out.write('\n');
+
+                    for (Reminder r : reminders) {
+                        ReminderCsv.write(r, out);
+                    }
+                    out.flush();
+                    atomicFile.finishWrite(stream);
+
+                } catch (IOException e) {
+                    error = e;
+                    if (stream != null) {
+                        atomicFile.failWrite(stream);
+                    }
+                }
+
+                final IOException failure = error;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onFinished(failure == null ? reminders.size() : 0, 0, failure);
+                    }
+                });
+            }
+        });
+    }
+}
@@ -0,0 +1,175 @@
+package com.bignerdranch.android.remindme;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Decides when Reminders are triggered, outside of the Activity, so that it works
+ * whether the app is open or not. It reads the Reminders of the ReminderRepository,
+ * through the snapshot of its Store, which never changes and needs no lock.
+ *
+ * A triggered Reminder is notified and its id is published on TRIGGERED. The repository
+ * removes it, on the main thread, it is the only one that writes the Reminders to file.
+ * The ids that are fired are remembered until the repository has removed them, so a
+ * Reminder is not notified twice by a location that comes before its removal.
+ *
+ * All methods but load run on the trigger thread, the one of looper(), which is shared
+ * by the whole process.
+ */
+class ReminderTrigger {
+
+    /**
+     * The ids of the triggered Reminders, published on the trigger thread.
+     */
+    static final EventChannel<long[]> TRIGGERED = new EventChannel<>();
+
+    private static HandlerThread thread;
+
+    /**
+     * The ids that are fired and not yet removed by the repository.
+     * Only used on the trigger thread.
+     */
+    private static final HashSet<Long> FIRED = new HashSet<>();
+
+    private Context context;
+    private ReminderRepository repository;
+    private boolean loaded;
+
+    /**
+     * @return the Looper of the trigger thread, it is started on first use.
+     */
+    static synchronized Looper looper() {
+        if (thread == null) {
+            thread = new HandlerThread("ReminderTrigger", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+        }
+        return thread.getLooper();
+    }
+
+    /**
+     * Called by the repository when the triggered Reminders are removed,
+     * they can't be fired again after that.
+     * @param ids the ids that were published on TRIGGERED.
+     */
+    static void removed(final long[] ids) {
+        new Handler(looper()).post(new Runnable() {
+            @Override
+            public void run() {
+                for (long id : ids) {
+                    FIRED.remove(id);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param context a Context, the application Context is kept.
+     */
+    ReminderTrigger(Context context) {
+        this.context = context.getApplicationContext();
+        repository = ReminderRepository.get(this.context);
+    }
+
+    /**
+     * Has the repository read the Reminders, if it hasn't already.
+     * Called on the main thread.
+     * @param onLoaded run on the trigger thread when the Reminders are read, or null.
+     */
+    void load(final Runnable onLoaded) {
+        final Handler handler = new Handler(looper());
+
+        repository.load(new Runnable() {
+            @Override
+            public void run() {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        loaded = true;
+
+                        if (onLoaded != null) {
+                            onLoaded.run();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Triggers the Reminders the Location is inside of.
+     * @param location the current Location.
+     */
+    void check(Location location) {
+        if (loaded) {
+            fire(repository.storeSnapshot().findAllNear(location));
+        }
+    }
+
+    /**
+     * Triggers the Reminders with the ids, if they are still stored.
+     * @param ids the ids of the entered geofences.
+     */
+    void check(long[] ids) {
+        if (loaded) {
+            fire(repository.storeSnapshot().findAllById(ids));
+        }
+    }
+
+    /**
+     * @param location the current Location, or null if it is not known.
+     * @return the distance in meters to the nearest Reminder, see Store.distanceToNearest.
+     * 0 if the Location is not known or the Reminders aren't read yet.
+     */
+    double distanceToNearest(Location location) {
+        if (location == null || !loaded) {
+            return 0;
+        }
+        return repository.storeSnapshot().distanceToNearest(location);
+    }
+
+    /**
+     * @return true if the Reminders are read and all of them are fired.
+     */
+    boolean isEmpty() {
+        if (!loaded) {
+            return false;
+        }
+
+        for (Reminder r : repository.storeSnapshot().getReminders()) {
+            if (!FIRED.contains(r.getId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void fire(List<Reminder> found) {
+        ArrayList<Reminder> triggered = new ArrayList<>(found.size());
+
+        for (Reminder r : found) {
+            if (FIRED.add(r.getId())) {
+                triggered.add(r);
+            }
+        }
+
+        if (triggered.isEmpty()) {
+            return;
+        }
+
+        ReminderNotifier.notify(context, triggered);
+
+        long[] ids = new long[triggered.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = triggered.get(i).getId();
+        }
+        TRIGGERED.publish(ids);
+    }
+}
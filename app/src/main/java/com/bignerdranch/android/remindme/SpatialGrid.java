@@ -0,0 +1,322 @@
+package com.bignerdranch.android.remindme;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-cell grid over latitude/longitude, used by the Store to find the
+ * items that might be close to a position without walking all of them.
+ * Each item is kept in the one cell that contains its coordinates, a lookup
+ * only visits the cells that are covered by the search radius.
+ * The items are ints (the Store's slot numbers) and the cells are found in an
+ * open-addressing table keyed by a primitive long, so a lookup allocates nothing.
+ *
+ * An item can have a reach, how far from its coordinates it is found by queryReaching.
+ * Every cell keeps the largest reach of its items, so a few items with a long reach
+ * only make the lookup visit more cells, their neighbours are not collected as well.
+ */
+class SpatialGrid {
+
+    /**
+     * The side of a cell in degrees, about 550 meters along a meridian.
+     */
+    static final double CELL_SIZE = 0.005;
+    static final double METERS_PER_DEGREE = 111320;
+
+    private static final long COLUMNS = Math.round(360 / CELL_SIZE);
+
+    private static final long EMPTY = -1;
+
+    private long[] keys;
+    private IntList[] cells;
+    private double[] reaches;
+    private double maxReach;
+    private int cellCount;
+    private int size;
+
+    SpatialGrid() {
+        keys = new long[64];
+        cells = new IntList[64];
+        reaches = new double[64];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * @param other the grid to copy, the copy has cells of its own.
+     */
+    SpatialGrid(SpatialGrid other) {
+        keys = other.keys.clone();
+        cells = new IntList[other.cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            if (other.cells[i] != null) {
+                cells[i] = new IntList(other.cells[i]);
+            }
+        }
+        reaches = other.reaches.clone();
+        maxReach = other.maxReach;
+        cellCount = other.cellCount;
+        size = other.size;
+    }
+
+    /**
+     * Puts an item in the cell covering its coordinates.
+     * @param item the item.
+     * @param latitude the latitude of the item.
+     * @param longitude the longitude of the item.
+     */
+    void insert(int item, double latitude, double longitude) {
+        insert(item, latitude, longitude, 0);
+    }
+
+    /**
+     * Puts an item in the cell covering its coordinates.
+     * @param item the item.
+     * @param latitude the latitude of the item.
+     * @param longitude the longitude of the item.
+     * @param reach how far away from the coordinates the item is found by queryReaching, in meters.
+     */
+    void insert(int item, double latitude, double longitude, double reach) {
+        long key = key(row(latitude), column(longitude));
+        int i = find(key);
+
+        if (keys[i] == EMPTY) {
+            keys[i] = key;
+            cells[i] = new IntList(4);
+            cellCount++;
+        }
+
+        cells[i].add(item);
+        reaches[i] = Math.max(reaches[i], reach);
+        maxReach = Math.max(maxReach, reach);
+        size++;
+
+        if (cellCount * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * Takes an item out of the cell covering the coordinates it was inserted with.
+     * The reach of the cell is only lowered when it is empty, until then it may
+     * be longer than it has to be, which costs a few candidates but misses nothing.
+     * @param item the item.
+     * @param latitude the latitude the item was inserted with.
+     * @param longitude the longitude the item was inserted with.
+     * @return true if the item was found and removed.
+     */
+    boolean remove(int item, double latitude, double longitude) {
+        int i = find(key(row(latitude), column(longitude)));
+        IntList cell = cells[i];
+
+        if (cell != null && cell.removeValue(item)) {
+            if (cell.isEmpty()) {
+                reaches[i] = 0;
+            }
+            size--;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Collects the items of all cells that overlap a circle around the position.
+     * The caller still has to check the exact distance of each candidate.
+     * @param latitude the latitude of the position.
+     * @param longitude the longitude of the position.
+     * @param radius the radius of the circle in meters.
+     * @param out the list the candidates are added to.
+     */
+    void query(double latitude, double longitude, double radius, IntList out) {
+        if (size == 0) {
+            return;
+        }
+
+        int centerRow = row(latitude);
+        long centerColumn = column(longitude);
+        int rowSpan = (int) Math.ceil(radius / (CELL_SIZE * METERS_PER_DEGREE));
+        long columnSpan = columnSpan(latitude, radius, rowSpan);
+
+        long firstColumn = centerColumn - columnSpan;
+        long columnCount = Math.min(COLUMNS, 2 * columnSpan + 1);
+
+        for (int r = centerRow - rowSpan; r <= centerRow + rowSpan; r++) {
+            for (long c = 0; c < columnCount; c++) {
+                IntList cell = cell(key(r, wrap(firstColumn + c)));
+
+                if (cell != null) {
+                    out.addAll(cell);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the items of all cells that have an item whose reach may cover the position.
+     * Only the cells within the longest reach are visited, and of those only the ones
+     * that are closer to the position than their own longest reach.
+     * The caller still has to check the exact distance of each candidate.
+     * @param latitude the latitude of the position.
+     * @param longitude the longitude of the position.
+     * @param out the list the candidates are added to.
+     */
+    void queryReaching(double latitude, double longitude, IntList out) {
+        if (size == 0) {
+            return;
+        }
+
+        double rowPosition = (latitude + 90) / CELL_SIZE;
+        int centerRow = (int) Math.floor(rowPosition);
+        double rowFraction = rowPosition - centerRow;
+
+        double columnPosition = (longitude + 180) / CELL_SIZE;
+        long unwrappedColumn = (long) Math.floor(columnPosition);
+        double columnFraction = columnPosition - unwrappedColumn;
+        long centerColumn = wrap(unwrappedColumn);
+
+        int rowSpan = (int) Math.ceil(maxReach / (CELL_SIZE * METERS_PER_DEGREE));
+        long columnSpan = columnSpan(latitude, maxReach, rowSpan);
+        long columnCount = Math.min(COLUMNS, 2 * columnSpan + 1);
+        boolean wholeRow = columnCount == COLUMNS;
+
+        for (int r = -rowSpan; r <= rowSpan; r++) {
+            int row = centerRow + r;
+            double dy = gap(r, rowFraction) * CELL_SIZE * METERS_PER_DEGREE;
+
+            // The side of the cells nearest to a pole is the shortest, it decides how
+            // close they can be.
+            double edge = Math.min(90, Math.max(Math.abs(row * CELL_SIZE - 90), Math.abs((row + 1) * CELL_SIZE - 90)));
+            double metersPerDegree = METERS_PER_DEGREE * Math.cos(Math.toRadians(edge));
+
+            for (long c = -columnSpan; c < columnCount - columnSpan; c++) {
+                int i = find(key(row, wrap(centerColumn + c)));
+
+                if (cells[i] == null || cells[i].isEmpty()) {
+                    continue;
+                }
+
+                double dx = wholeRow ? 0 : gap(c, columnFraction) * CELL_SIZE * metersPerDegree;
+                if (dx * dx + dy * dy <= reaches[i] * reaches[i]) {
+                    out.addAll(cells[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all items.
+     */
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(cells, null);
+        Arrays.fill(reaches, 0);
+        maxReach = 0;
+        cellCount = 0;
+        size = 0;
+    }
+
+    /**
+     * @return the number of items in the grid.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * A degree of longitude shrinks towards the poles, so more columns
+     * has to be visited the further away from the equator the position is.
+     */
+    private long columnSpan(double latitude, double radius, int rowSpan) {
+        double edge = Math.min(90, Math.abs(latitude) + rowSpan * CELL_SIZE);
+        double metersPerDegree = METERS_PER_DEGREE * Math.cos(Math.toRadians(edge));
+
+        if (metersPerDegree * COLUMNS * CELL_SIZE <= 2 * radius) {
+            return COLUMNS;
+        }
+
+        return Math.min(COLUMNS, (long) Math.ceil(radius / (CELL_SIZE * metersPerDegree)));
+    }
+
+    /**
+     * @param key the key of a cell.
+     * @return the cell, or null if it has never had any items.
+     */
+    private IntList cell(long key) {
+        return cells[find(key)];
+    }
+
+    /**
+     * Linear probing, the table is never more than half full.
+     * Cells that become empty are kept, so a key is never taken out of the table.
+     * @param key the key of a cell.
+     * @return the index of the key, or of the empty place where it would go.
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        IntList[] oldCells = cells;
+        double[] oldReaches = reaches;
+        keys = new long[oldKeys.length * 2];
+        cells = new IntList[oldCells.length * 2];
+        reaches = new double[oldReaches.length * 2];
+        Arrays.fill(keys, EMPTY);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int j = find(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                cells[j] = oldCells[i];
+                reaches[j] = oldReaches[i];
+            }
+        }
+    }
+
+    /**
+     * @param offset how many cells away a cell is, along one axis.
+     * @param fraction where the position is inside its own cell, from 0 to 1.
+     * @return the gap between the position and the near side of the cell, in cells.
+     */
+    private static double gap(long offset, double fraction) {
+        if (offset > 0) {
+            return offset - fraction;
+        }
+        if (offset < 0) {
+            return -offset - 1 + fraction;
+        }
+        return 0;
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    private static int row(double latitude) {
+        return (int) Math.floor((latitude + 90) / CELL_SIZE);
+    }
+
+    private static long column(double longitude) {
+        return wrap((long) Math.floor((longitude + 180) / CELL_SIZE));
+    }
+
+    /**
+     * Keeps a column index inside the grid, so that a lookup
+     * close to the date line also finds the cells on the other side.
+     */
+    private static long wrap(long column) {
+        long c = column % COLUMNS;
+        return c < 0 ? c + COLUMNS : c;
+    }
+
+    private static long key(int row, long column) {
+        return row * COLUMNS + column;
+    }
+}
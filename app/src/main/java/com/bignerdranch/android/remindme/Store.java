@@ -5,21 +5,112 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 /**
  * Created by annika on 2017-08-14.
  */
 
 /**
- * A custom wrapper class for the ArrayList holding the Reminders.
+ * A custom class holding the Reminders, keyed by id in the order they were added.
+ * A Reminder is always found and removed by its id, never by its index in a list,
+ * which would go stale as soon as the list changes.
+ *
+ * For the proximity check every Reminder also gets a slot in a set of parallel arrays,
+ * holding its latitude, longitude and radius. The slots are kept in a SpatialGrid, so
+ * that a location update only has to be compared with the Reminders in its surroundings,
+ * and the comparison reads the arrays instead of the Reminder objects. Every Reminder
+ * has a radius of its own, the grid is told how far each slot reaches, so a Reminder
+ * with a large radius doesn't make every check collect the Reminders around it.
+ *
+ * The slots are also hashed by place key, see Reminder.placeKey, so the check for
+ * duplicates in add only compares the text of the Reminders at the same place and
+ * with the same radius. The place key is made from the arrays, Reminders read from
+ * file stay encoded unless another Reminder is added right where they are.
  */
 public class Store implements Parcelable {
 
-    private ArrayList<Reminder> reminders;
+    private SpatialGrid grid;
+    private int maxRadius;
+    private long lastId;
+    private LinkedHashMap<Long, Reminder> byId;
+    private HashMap<String, IntList> byPlace;
+    /**
+     * The radius of a new Reminder, unless the user picks another one.
+     */
     public static final int MAX_DISTANCE = 75;
 
+    /**
+     * The equirectangular distance is only trusted this far from the radius,
+     * the margin covers the flattening of the earth that it ignores.
+     */
+    private static final double BOUNDARY_MARGIN = 0.01;
+
+    /**
+     * The distances distanceToNearest searches before it settles for a lower bound.
+     */
+    private static final double[] NEAREST_SEARCH = {1000, 4000, 20000};
+
+    private double[] latitudes;
+    private double[] longitudes;
+    private int[] radii;
+    private Reminder[] slots;
+    private String[] keys;
+    private int slotCount;
+    private IntList freeSlots;
+
+    /**
+     * The buffers of the proximity check, null in a copy made by ConcurrentStore,
+     * which is read by several threads at once and uses the buffers of the thread.
+     */
+    private Scratch scratch;
+
+    private static final ThreadLocal<Scratch> THREAD_SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private static final class Scratch {
+        final IntList candidates = new IntList();
+        final float[] distance = new float[1];
+    }
+
     public Store() {
-        reminders = new ArrayList<>();
+        grid = new SpatialGrid();
+        scratch = new Scratch();
+        latitudes = new double[16];
+        longitudes = new double[16];
+        radii = new int[16];
+        slots = new Reminder[16];
+        keys = new String[16];
+        byId = new LinkedHashMap<>();
+        byPlace = new HashMap<>();
+        freeSlots = new IntList();
+    }
+
+    /**
+     * Copies a Store, the copy shares the Reminders but nothing else with it.
+     * It is only read, from any number of threads, see ConcurrentStore. What only
+     * the changes need, the place keys and the free slots, is left out of it.
+     * @param other the Store to copy.
+     */
+    Store(Store other) {
+        grid = new SpatialGrid(other.grid);
+        maxRadius = other.maxRadius;
+        lastId = other.lastId;
+        byId = new LinkedHashMap<>(other.byId);
+        latitudes = Arrays.copyOf(other.latitudes, other.slotCount);
+        longitudes = Arrays.copyOf(other.longitudes, other.slotCount);
+        radii = Arrays.copyOf(other.radii, other.slotCount);
+        slots = Arrays.copyOf(other.slots, other.slotCount);
+        slotCount = other.slotCount;
     }
 
     /**
@@ -28,69 +119,475 @@ public class Store implements Parcelable {
      * @param in the Parcel holding the old state.
      */
     private Store(Parcel in) {
+        this();
+        ArrayList<Reminder> reminders = new ArrayList<>();
         in.readTypedList(reminders, null);
+
+        for (Reminder r : reminders) {
+            restore(r);
+        }
     }
 
     /**
      * Adds a new Reminder to the store.
      * @param r new Reminder/
-     * @return the new Reminder if it wasn't already added.
+     * @return the new Reminder if it wasn't already added, and no other Reminder
+     * has the same content.
      */
     public Reminder add(Reminder r) {
-        if (!reminders.contains(r)) {
-            reminders.add(r);
-            return r;
+        return addNew(r);
+    }
 
-        } else {
+    /**
+     * Adds a batch of new Reminders, like an import. Duplicates are skipped,
+     * also the ones within the batch.
+     * @param batch the new Reminders.
+     * @return the Reminders that were added.
+     */
+    public List<Reminder> addAll(Collection<Reminder> batch) {
+        ArrayList<Reminder> added = new ArrayList<>(batch.size());
+
+        for (Reminder r : batch) {
+            if (addNew(r) != null) {
+                added.add(r);
+            }
+        }
+        return added;
+    }
+
+    private Reminder addNew(Reminder r) {
+        if ((r.getId() != 0 && byId.containsKey(r.getId())) || hasSameContent(r)) {
             return null;
         }
+
+        assignId(r);
+        index(r);
+        return r;
+    }
+
+    /**
+     * Adds a Reminder read from file, without looking for duplicates.
+     * A Reminder with the same id is replaced.
+     * @param r the Reminder.
+     */
+    void restore(Reminder r) {
+        put(r);
+    }
+
+    /**
+     * Adds the Reminders read from file, see restore.
+     * @param batch the Reminders.
+     */
+    void restoreAll(Collection<Reminder> batch) {
+        for (Reminder r : batch) {
+            put(r);
+        }
+    }
+
+    private void put(Reminder r) {
+        Reminder old = byId.get(r.getId());
+        if (old != null) {
+            unindex(old);
+        }
+
+        assignId(r);
+        index(r);
+    }
+
+    /**
+     * Gives a new Reminder the next free id, and makes sure that ids read
+     * from file are never given out again.
+     * @param r the Reminder.
+     */
+    private void assignId(Reminder r) {
+        if (r.getId() == 0) {
+            r.setId(++lastId);
+
+        } else {
+            lastId = Math.max(lastId, r.getId());
+        }
+    }
+
+    /**
+     * Gives a Reminder a slot in the arrays and puts the slot in the grid.
+     * The largest radius decides how far around a location the grid has to be searched.
+     * @param r the Reminder.
+     */
+    private void index(Reminder r) {
+        int slot;
+
+        if (!freeSlots.isEmpty()) {
+            slot = freeSlots.removeLast();
+
+        } else {
+            if (slotCount == slots.length) {
+                growSlots();
+            }
+            slot = slotCount++;
+        }
+
+        latitudes[slot] = r.getLatitude();
+        longitudes[slot] = r.getLongitude();
+        radii[slot] = r.getRadius();
+        slots[slot] = r;
+        r.setSlot(slot);
+        byId.put(r.getId(), r);
+        key(slot);
+
+        grid.insert(slot, latitudes[slot], longitudes[slot], reach(radii[slot]));
+        maxRadius = Math.max(maxRadius, r.getRadius());
     }
 
     /**
-     * @return the reminders.
+     * @param radius a radius.
+     * @return how far from a slot the grid has to find it, the approximate
+     * distance of isNear may be off by the margin.
      */
-    public ArrayList<Reminder> getReminders() {
-        return reminders;
+    private static double reach(int radius) {
+        return radius * (1 + BOUNDARY_MARGIN) + 1;
     }
 
     /**
-     * @param i an index
-     * @return the Reminder located at the specified index.
+     * Takes a Reminder out of the store and the grid, and frees its slot.
+     * @param r the Reminder.
      */
-    public Reminder getIndex(int i) {
-        return reminders.get(i);
+    private void unindex(Reminder r) {
+        int slot = r.getSlot();
+
+        if (slot >= 0 && slots[slot] == r) {
+            grid.remove(slot, latitudes[slot], longitudes[slot]);
+            unkey(slot);
+            byId.remove(r.getId());
+            slots[slot] = null;
+            freeSlots.add(slot);
+            r.setSlot(-1);
+        }
     }
 
     /**
-     * Iterates over the collection of Reminders, to see if
-     * one is close to the Location.
+     * Only the Reminders at the same place and with the same radius are decoded,
+     * to compare their text.
+     * @param r a new Reminder.
+     * @return true if a stored Reminder has the same content, see Reminder.textKey.
+     */
+    private boolean hasSameContent(Reminder r) {
+        IntList bucket = byPlace.get(Reminder.placeKey(r.getLatitude(), r.getLongitude(), r.getRadius()));
+        if (bucket == null) {
+            return false;
+        }
+
+        String text = r.textKey();
+        for (int i = 0; i < bucket.size(); i++) {
+            if (slots[bucket.get(i)].textKey().equals(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hashes a slot by its place key, made from the arrays and not the Reminder.
+     */
+    private void key(int slot) {
+        String key = Reminder.placeKey(latitudes[slot], longitudes[slot], radii[slot]);
+        keys[slot] = key;
+
+        IntList bucket = byPlace.get(key);
+        if (bucket == null) {
+            bucket = new IntList(1);
+            byPlace.put(key, bucket);
+        }
+        bucket.add(slot);
+    }
+
+    private void unkey(int slot) {
+        IntList bucket = byPlace.get(keys[slot]);
+
+        if (bucket != null) {
+            bucket.removeValue(slot);
+            if (bucket.isEmpty()) {
+                byPlace.remove(keys[slot]);
+            }
+        }
+        keys[slot] = null;
+    }
+
+    private void growSlots() {
+        int capacity = slots.length * 2;
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        radii = Arrays.copyOf(radii, capacity);
+        slots = Arrays.copyOf(slots, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+    }
+
+    /**
+     * @return the reminders, in the order they were added. The collection is a view
+     * of the store, it must be copied before the store is changed.
+     */
+    public Collection<Reminder> getReminders() {
+        return byId.values();
+    }
+
+    /**
+     * @return the number of Reminders.
+     */
+    public int size() {
+        return byId.size();
+    }
+
+    /**
+     * Asks the grid for the Reminders around the Location, and collects
+     * all of them that are close to it in one pass. Nothing is allocated
+     * unless a Reminder is found.
      * @param location A Location.
-     * @return the index of a Reminder close to the Location.
+     * @return the Reminders close to the Location, empty if there are none.
+     */
+    public List<Reminder> findAllNear(Location location) {
+        return findAllNear(location.getLatitude(), location.getLongitude());
+    }
+
+    /**
+     * @param latitude the latitude of a position.
+     * @param longitude the longitude of a position.
+     * @return the Reminders close to the position, empty if there are none.
+     */
+    List<Reminder> findAllNear(double latitude, double longitude) {
+        Scratch scratch = scratch();
+        IntList candidates = scratch.candidates;
+        double metersPerDegree = SpatialGrid.METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+        ArrayList<Reminder> near = null;
+
+        grid.queryReaching(latitude, longitude, candidates);
+
+        for (int i = 0; i < candidates.size(); i++) {
+            int slot = candidates.get(i);
+
+            if (isNear(slot, latitude, longitude, metersPerDegree, scratch.distance)) {
+                if (near == null) {
+                    near = new ArrayList<>();
+                }
+                near.add(slots[slot]);
+            }
+        }
+
+        candidates.clear();
+        return near == null ? Collections.<Reminder>emptyList() : near;
+    }
+
+    /**
+     * Looks up the Reminders with the given ids, ids that are not in the store are skipped.
+     * @param ids the ids of Reminders.
+     * @return the Reminders, empty if there are none.
      */
-    public int isNear(Location location) {
+    public List<Reminder> findAllById(long[] ids) {
+        ArrayList<Reminder> found = new ArrayList<>();
 
-        for (Reminder reminder : reminders) {
-            if (reminder.isNear(location)) {
-                return reminders.indexOf(reminder);
+        for (long id : ids) {
+            Reminder r = byId.get(id);
+            if (r != null) {
+                found.add(r);
             }
         }
+        return found;
+    }
 
-        return -1;
+    /**
+     * @param id the id of a Reminder.
+     * @return the Reminder with the id, null if it is not in the store.
+     */
+    public Reminder findById(long id) {
+        return byId.get(id);
+    }
+
+    /**
+     * Compares a slot with a position using the equirectangular approximation,
+     * which is exact enough for the short distances of a radius. Only when the
+     * distance is close to the radius, the exact distance on the ellipsoid is computed.
+     * @param slot the slot of a Reminder.
+     * @param latitude the latitude of the position.
+     * @param longitude the longitude of the position.
+     * @param metersPerDegree the length of a degree of longitude at the position.
+     * @param distance a buffer for the exact distance.
+     * @return true if the position is inside the radius of the Reminder.
+     */
+    private boolean isNear(int slot, double latitude, double longitude, double metersPerDegree,
+                           float[] distance) {
+        double squared = squaredDistance(slot, latitude, longitude, metersPerDegree);
+
+        int radius = radii[slot];
+        double margin = radius * BOUNDARY_MARGIN + 1;
+        double outer = radius + margin;
+        double inner = radius - margin;
+
+        if (squared >= outer * outer) {
+            return false;
+        }
+        if (inner > 0 && squared < inner * inner) {
+            return true;
+        }
+
+        Location.distanceBetween(latitude, longitude, latitudes[slot], longitudes[slot], distance);
+        return distance[0] < radius;
+    }
+
+    /**
+     * Finds how far the Location is from the radius of the closest Reminder, so the
+     * location updates can be slowed down when nothing is close. The grid is searched in
+     * growing steps, and beyond the last step the distance is only given as a lower bound.
+     * @param location A Location.
+     * @return the distance in meters to the edge of the nearest radius, 0 if the Location
+     * is inside one, and infinity if the store is empty.
+     */
+    public double distanceToNearest(Location location) {
+        if (byId.isEmpty()) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double latitude = location.getLatitude();
+        double longitude = location.getLongitude();
+        double metersPerDegree = SpatialGrid.METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+        IntList candidates = scratch().candidates;
+
+        for (double search : NEAREST_SEARCH) {
+            double nearest = Double.POSITIVE_INFINITY;
+
+            grid.query(latitude, longitude, search + maxRadius, candidates);
+
+            for (int i = 0; i < candidates.size(); i++) {
+                int slot = candidates.get(i);
+                double meters = Math.sqrt(squaredDistance(slot, latitude, longitude, metersPerDegree));
+
+                // Rather too close than too far, the approximation may be off by the margin.
+                nearest = Math.min(nearest, meters * (1 - BOUNDARY_MARGIN) - radii[slot]);
+            }
+
+            candidates.clear();
+
+            // Anything closer than the search distance is in the candidates.
+            if (nearest <= search) {
+                return Math.max(nearest, 0);
+            }
+        }
+
+        return NEAREST_SEARCH[NEAREST_SEARCH.length - 1];
+    }
+
+    private Scratch scratch() {
+        return scratch != null ? scratch : THREAD_SCRATCH.get();
+    }
+
+    /**
+     * The squared distance in meters between a slot and a position,
+     * with the equirectangular approximation.
+     */
+    private double squaredDistance(int slot, double latitude, double longitude, double metersPerDegree) {
+        double deltaLongitude = longitudes[slot] - longitude;
+        if (deltaLongitude > 180) {
+            deltaLongitude -= 360;
+        } else if (deltaLongitude < -180) {
+            deltaLongitude += 360;
+        }
+
+        double dx = deltaLongitude * metersPerDegree;
+        double dy = (latitudes[slot] - latitude) * SpatialGrid.METERS_PER_DEGREE;
+        return dx * dx + dy * dy;
     }
 
     /**
      * @return true if there are no reminders in store.
      */
     public boolean isEmpty() {
-        return reminders.isEmpty();
+        return byId.isEmpty();
+    }
+
+    /**
+     * Removes a Reminder from the store and the grid, in constant time.
+     * Nothing happens if the Reminder is not in the store.
+     * @param r the Reminder.
+     */
+    public void remove(Reminder r) {
+        unindex(r);
+    }
+
+    /**
+     * Removes several Reminders at once, when many of them are triggered together.
+     * @param batch the Reminders to be removed.
+     */
+    public void removeAll(Collection<Reminder> batch) {
+        for (Reminder r : batch) {
+            unindex(r);
+        }
+    }
+
+    /**
+     * Removes the Reminders with the given ids, ids that are not in the store are skipped.
+     * @param ids the ids of Reminders.
+     * @return the Reminders that were removed, empty if there were none.
+     */
+    public List<Reminder> removeAllById(long[] ids) {
+        ArrayList<Reminder> removed = new ArrayList<>();
+
+        for (long id : ids) {
+            Reminder r = byId.get(id);
+            if (r != null) {
+                unindex(r);
+                removed.add(r);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Moves a Reminder to a new Location, the grid and the arrays have to
+     * know about it or the Reminder will be looked for in the wrong place.
+     * @param r the Reminder.
+     * @param newLocation the new Location.
+     */
+    public void move(Reminder r, Location newLocation) {
+        int slot = r.getSlot();
+        r.setLocation(newLocation);
+
+        if (slot >= 0 && slots[slot] == r) {
+            grid.remove(slot, latitudes[slot], longitudes[slot]);
+            latitudes[slot] = r.getLatitude();
+            longitudes[slot] = r.getLongitude();
+            grid.insert(slot, latitudes[slot], longitudes[slot], reach(radii[slot]));
+            rekey(slot);
+        }
     }
 
     /**
-     * Removes a Reminder based on it's index.
-     * @param index the index.
+     * Gives a Reminder a new radius, the grid has to know how far it reaches now.
+     * @param r the Reminder.
+     * @param radius the new radius in meters.
      */
-    public void remove(int index) {
-        reminders.remove(index);
+    public void setRadius(Reminder r, int radius) {
+        int slot = r.getSlot();
+        r.setRadius(radius);
+
+        if (slot >= 0 && slots[slot] == r) {
+            grid.remove(slot, latitudes[slot], longitudes[slot]);
+            radii[slot] = radius;
+            grid.insert(slot, latitudes[slot], longitudes[slot], reach(radius));
+            maxRadius = Math.max(maxRadius, radius);
+            rekey(slot);
+        }
+    }
+
+    /**
+     * Gives a Reminder a new text. Its place key stays the same, the text is
+     * compared when a new Reminder is added at its place.
+     * @param r the Reminder.
+     * @param text the new text.
+     */
+    public void setText(Reminder r, String text) {
+        r.setText(text);
+    }
+
+    private void rekey(int slot) {
+        unkey(slot);
+        key(slot);
     }
 
     /**
@@ -109,7 +606,7 @@ public class Store implements Parcelable {
      */
     @Override
     public void writeToParcel(Parcel parcel, int i) {
-        parcel.writeTypedList(reminders);
+        parcel.writeTypedList(new ArrayList<>(byId.values()));
     }
 
     /**
@@ -141,21 +638,10 @@ public class Store implements Parcelable {
         }
     };
 
-    /**
-     * Assembles the Reminders serialized strings into one to be saved to file.
-     * @return the string containing all the reminders serialized strings.
-     */
-    public String serialize() {
-        String out = "";
-        for (Reminder r : reminders) {
-            out += r.serialize();
-        }
-
-        return out;
-    }
-
     /**
      * Chops the input string and create new Reminder objects from the data.
+     * This is the old text format, it is only read to move old data over
+     * to the format of ReminderCodec.
      * @param input string with data stored in the device.
      */
     public void deSerialize(String input) {
@@ -163,7 +649,6 @@ public class Store implements Parcelable {
         String[] rows = input.split("_");
         Location location;
         ArrayList<String> list;
-        String[] listContent;
 
         for (int i = 0; i < rows.length; i++) {
             String[] cols = rows[i].split(",");
@@ -172,15 +657,12 @@ public class Store implements Parcelable {
             location.setLongitude(Double.parseDouble(cols[1]));
             list = new ArrayList<>();
             if (cols.length > 5) {
-                listContent = cols[5].split("^");
-                System.out.println("listContent: "+ listContent);
-
                 for (int j = 5; j < cols.length; j++) {
                     list.add(cols[j]);
                 }
             }
 
-            reminders.add(new Reminder(location, cols[2], cols[3], Integer.parseInt(cols[4]), list));
+            restore(new Reminder(location, cols[2], cols[3], Integer.parseInt(cols[4]), list));
         }
     }
 }
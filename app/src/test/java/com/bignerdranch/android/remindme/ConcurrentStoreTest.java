@@ -0,0 +1,157 @@
+package com.bignerdranch.android.remindme;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Adds, removes and searches Reminders in a ConcurrentStore from several threads at once,
+ * and checks that every copy the readers see agrees with itself.
+ */
+public class ConcurrentStoreTest {
+
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int REMINDERS = 500;
+
+    private static Reminder reminder(int writer, int i) {
+        Reminder r = new Reminder(0, 10 + writer + i * 0.001, 20, 75);
+        r.setStrings("writer " + writer + " reminder " + i, "place", new ArrayList<String>());
+        return r;
+    }
+
+    @Test
+    public void stress_concurrentAddRemoveAndQuery() throws Exception {
+        final ConcurrentStore store = new ConcurrentStore();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch writersDone = new CountDownLatch(WRITERS);
+        final int[] queries = new int[READERS];
+        ArrayList<Thread> threads = new ArrayList<>();
+
+        for (int w = 0; w < WRITERS; w++) {
+            final int writer = w;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < REMINDERS; i++) {
+                            Reminder r = store.add(reminder(writer, i));
+                            assertNotNull(r);
+
+                            if (i % 2 == 1) {
+                                if (i % 4 == 1) {
+                                    store.remove(r);
+                                } else {
+                                    assertEquals(1, store.removeAllById(new long[] {r.getId()}).size());
+                                }
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        writersDone.countDown();
+                    }
+                }
+            }));
+        }
+
+        for (int r = 0; r < READERS; r++) {
+            final int reader = r;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        while (writing.get()) {
+                            check(store.snapshot());
+                            queries[reader]++;
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        writersDone.await();
+        writing.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        Store snapshot = store.snapshot();
+        check(snapshot);
+        assertEquals(WRITERS * REMINDERS / 2, store.size());
+
+        HashSet<Long> ids = new HashSet<>();
+        for (Reminder r : store.getReminders()) {
+            assertTrue(ids.add(r.getId()));
+            assertTrue(r.getText().endsWith("reminder " + Math.round((r.getLatitude() % 1) * 1000)));
+        }
+        for (int reader = 0; reader < READERS; reader++) {
+            assertTrue(queries[reader] > 0);
+        }
+    }
+
+    @Test
+    public void snapshot_isOnlyCopiedWhenItIsAskedForAfterAChange() throws Exception {
+        ConcurrentStore store = new ConcurrentStore();
+        Store empty = store.snapshot();
+
+        for (int i = 0; i < REMINDERS; i++) {
+            store.add(reminder(0, i));
+        }
+        Store first = store.snapshot();
+        assertNotSame(empty, first);
+        assertSame(first, store.snapshot());
+        assertEquals(REMINDERS, first.size());
+
+        Reminder r = first.getReminders().iterator().next();
+        store.remove(r);
+        assertEquals(REMINDERS, first.size());
+        assertSame(r, first.findById(r.getId()));
+
+        Store second = store.snapshot();
+        assertNotSame(first, second);
+        assertNull(second.findById(r.getId()));
+        check(second);
+    }
+
+    /**
+     * Everything in a copy has to be found in it, by id and by position.
+     */
+    private static void check(Store snapshot) {
+        int count = 0;
+        Reminder last = null;
+
+        for (Reminder r : snapshot.getReminders()) {
+            assertSame(r, snapshot.findById(r.getId()));
+            count++;
+            last = r;
+        }
+        assertEquals(count, snapshot.size());
+
+        if (last != null) {
+            List<Reminder> near = snapshot.findAllNear(last.getLatitude(), last.getLongitude());
+            assertTrue(near.contains(last));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.bignerdranch.android.remindme;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for EventChannel.
+ */
+public class EventChannelTest {
+
+    @Test
+    public void publish_reachesListenersInOrder() throws Exception {
+        EventChannel<String> channel = new EventChannel<>();
+        final ArrayList<String> calls = new ArrayList<>();
+
+        channel.subscribe(new EventChannel.Listener<String>() {
+            @Override
+            public void onEvent(String event) {
+                calls.add("first " + event);
+            }
+        });
+        channel.subscribe(new EventChannel.Listener<String>() {
+            @Override
+            public void onEvent(String event) {
+                calls.add("second " + event);
+            }
+        });
+
+        channel.publish("a");
+
+        assertEquals(2, calls.size());
+        assertEquals("first a", calls.get(0));
+        assertEquals("second a", calls.get(1));
+    }
+
+    @Test
+    public void unsubscribe_stopsEvents() throws Exception {
+        EventChannel<String> channel = new EventChannel<>();
+        final int[] count = new int[1];
+
+        EventChannel.Listener<String> listener = new EventChannel.Listener<String>() {
+            @Override
+            public void onEvent(String event) {
+                count[0]++;
+            }
+        };
+
+        channel.subscribe(listener);
+        channel.publish("a");
+        channel.unsubscribe(listener);
+        channel.publish("b");
+
+        assertEquals(1, count[0]);
+        assertFalse(channel.hasListeners());
+    }
+
+    @Test
+    public void unsubscribe_duringPublish_isSafe() throws Exception {
+        final EventChannel<String> channel = new EventChannel<>();
+        final int[] count = new int[1];
+
+        EventChannel.Listener<String> once = new EventChannel.Listener<String>() {
+            @Override
+            public void onEvent(String event) {
+                channel.unsubscribe(this);
+            }
+        };
+        channel.subscribe(once);
+        channel.subscribe(new EventChannel.Listener<String>() {
+            @Override
+            public void onEvent(String event) {
+                count[0]++;
+            }
+        });
+
+        channel.publish("a");
+        channel.publish("b");
+
+        assertEquals(2, count[0]);
+    }
+}
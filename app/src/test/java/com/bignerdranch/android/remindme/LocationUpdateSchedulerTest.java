@@ -0,0 +1,70 @@
+package com.bignerdranch.android.remindme;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for LocationUpdateScheduler.
+ */
+public class LocationUpdateSchedulerTest {
+
+    @Test
+    public void startsWithShortestInterval() throws Exception {
+        LocationUpdateScheduler scheduler = new LocationUpdateScheduler();
+
+        assertEquals(LocationUpdateScheduler.MIN_INTERVAL, scheduler.getInterval());
+        assertEquals(0, scheduler.getMinDistance(), 0);
+    }
+
+    @Test
+    public void farAwayReminder_slowsDown() throws Exception {
+        LocationUpdateScheduler scheduler = new LocationUpdateScheduler();
+
+        assertTrue(scheduler.update(5000, 0));
+        assertTrue(scheduler.getInterval() > 60 * 1000);
+        assertTrue(scheduler.getMinDistance() >= 1000 - 1);
+    }
+
+    @Test
+    public void noReminders_usesLongestInterval() throws Exception {
+        LocationUpdateScheduler scheduler = new LocationUpdateScheduler();
+
+        scheduler.update(Double.POSITIVE_INFINITY, 0);
+        assertEquals(LocationUpdateScheduler.MAX_INTERVAL, scheduler.getInterval());
+    }
+
+    @Test
+    public void fastDevice_asksMoreOften() throws Exception {
+        LocationUpdateScheduler walking = new LocationUpdateScheduler();
+        LocationUpdateScheduler driving = new LocationUpdateScheduler();
+
+        walking.update(3000, 1.5f);
+        driving.update(3000, 25);
+
+        assertTrue(driving.getInterval() < walking.getInterval());
+    }
+
+    @Test
+    public void gettingCloser_isActedOnAtOnce() throws Exception {
+        LocationUpdateScheduler scheduler = new LocationUpdateScheduler();
+        scheduler.update(5000, 0);
+
+        assertTrue(scheduler.update(100, 0));
+        assertTrue(scheduler.getInterval() < 60 * 1000);
+        assertTrue(scheduler.getMinDistance() <= 50);
+
+        assertTrue(scheduler.update(0, 0));
+        assertEquals(LocationUpdateScheduler.MIN_INTERVAL, scheduler.getInterval());
+        assertEquals(0, scheduler.getMinDistance(), 0);
+    }
+
+    @Test
+    public void smallChanges_keepTheSchedule() throws Exception {
+        LocationUpdateScheduler scheduler = new LocationUpdateScheduler();
+        scheduler.update(1000, 0);
+
+        assertFalse(scheduler.update(1100, 0));
+        assertFalse(scheduler.update(1000, 0));
+    }
+}
@@ -0,0 +1,137 @@
+package com.bignerdranch.android.remindme;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that broken files are reported by ReminderCodec.read, and not later.
+ */
+public class ReminderCodecTest {
+
+    private static byte[] file(int length, byte[] record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(ReminderCodec.MAGIC);
+        out.writeInt(ReminderCodec.VERSION);
+        out.writeInt(1);
+        out.writeInt(length);
+        out.write(record);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A record with the text length given, and a location name and list that are fine.
+     */
+    private static byte[] record(int textLength) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(1);
+        out.writeDouble(59.3293);
+        out.writeDouble(18.0686);
+        out.writeInt(75);
+        out.writeInt(textLength);
+        out.writeBytes("text");
+        out.writeInt(-1);
+        out.writeInt(0);
+        return bytes.toByteArray();
+    }
+
+    private static void assertStreamFails(byte[] data) {
+        try {
+            ReminderCodec.read(new ByteArrayInputStream(data), new ArrayList<Reminder>());
+            fail("read a broken file");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void readStream_rejectsBrokenRecordLengths() throws Exception {
+        byte[] record = record(4);
+
+        assertStreamFails(file(-1, record));
+        assertStreamFails(file(Integer.MAX_VALUE, record));
+        assertStreamFails(file(record.length, record(-5)));
+        assertStreamFails(file(record.length, record(1000)));
+    }
+
+    @Test
+    public void readMapped_rejectsBrokenStringsBeforeTheyAreUsed() throws Exception {
+        File file = File.createTempFile("reminders", null);
+
+        try {
+            byte[] record = record(1000);
+            write(file, file(record.length, record));
+            try {
+                read(file);
+                fail("read a broken file");
+            } catch (IOException e) {
+                // Expected.
+            }
+
+            write(file, file(Integer.MAX_VALUE, record(4)));
+            try {
+                read(file);
+                fail("read a broken file");
+            } catch (IOException e) {
+                // Expected.
+            }
+
+            Reminder r = new Reminder(7, 59.3293, 18.0686, 150);
+            r.setStrings("Buy milk", null, new ArrayList<>(Arrays.asList("milk")));
+            FileOutputStream out = new FileOutputStream(file);
+            ReminderCodec.write(Collections.singletonList(r), out);
+            out.close();
+
+            Reminder read = read(file).get(0);
+            assertEquals(7, read.getId());
+            assertEquals("Buy milk", read.getText());
+            assertNull(read.getLocationName());
+            assertEquals(Arrays.asList("milk"), read.getList());
+
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void readLegacy_reportsATextThatBrokeTheFormat() throws Exception {
+        assertStreamFails("59.3293,18.0686,Buy milk, bread,place,75".getBytes("UTF-8"));
+        assertStreamFails("59.3293,18.0686,Buy_milk,place,75".getBytes("UTF-8"));
+
+        ArrayList<Reminder> reminders = new ArrayList<>();
+        ReminderCodec.read(new ByteArrayInputStream(
+                "59.3293,18.0686,Buy milk,place,75,milk".getBytes("UTF-8")), reminders);
+        assertEquals("Buy milk", reminders.get(0).getText());
+        assertEquals(75, reminders.get(0).getRadius());
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(data);
+        out.close();
+    }
+
+    private static ArrayList<Reminder> read(File file) throws IOException {
+        ArrayList<Reminder> reminders = new ArrayList<>();
+        FileInputStream in = new FileInputStream(file);
+        try {
+            ReminderCodec.read(in, reminders);
+        } finally {
+            in.close();
+        }
+        return reminders;
+    }
+}
@@ -0,0 +1,96 @@
+package com.bignerdranch.android.remindme;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the import and export format.
+ */
+public class ReminderCsvTest {
+
+    @Test
+    public void parser_readsRowsAndSkipsTheRest() throws Exception {
+        String csv = ReminderCsv.HEADER + "\r\n"
+                + "59.3293,18.0686,150,Buy milk,\"Coop, Drottninggatan\",milk,\"bread, whole grain\"\r\n"
+                + "\n"
+                + "not,a,reminder,row\n"
+                + "59.33,18.07,,\"Say \"\"hi\"\"\n to Bob\"";
+        ReminderCsv.Parser parser = new ReminderCsv.Parser(new StringReader(csv));
+
+        Reminder first = parser.next();
+        assertEquals(59.3293, first.getLatitude(), 0);
+        assertEquals(150, first.getRadius());
+        assertEquals("Buy milk", first.getText());
+        assertEquals("Coop, Drottninggatan", first.getLocationName());
+        assertEquals(Arrays.asList("milk", "bread, whole grain"), first.getList());
+
+        Reminder second = parser.next();
+        assertEquals(Store.MAX_DISTANCE, second.getRadius());
+        assertEquals("Say \"hi\"\n to Bob", second.getText());
+        assertEquals("59.33000, 18.07000", second.getLocationName());
+        assertTrue(second.getList().isEmpty());
+
+        assertNull(parser.next());
+        assertEquals(1, parser.getSkipped());
+    }
+
+    @Test
+    public void write_isReadBackTheSame() throws Exception {
+        StringWriter out = new StringWriter();
+        ArrayList<Reminder> written = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Reminder r = new Reminder(i + 1, 59 + i * 0.0001, -18.5, 20 + i);
+            r.setStrings("text, \"" + i + "\"", "place, " + i, new ArrayList<>(Arrays.asList("a", "b\n" + i)));
+            ReminderCsv.write(r, out);
+            written.add(r);
+        }
+
+        ReminderCsv.Parser parser = new ReminderCsv.Parser(new StringReader(out.toString()));
+        for (Reminder r : written) {
+            Reminder read = parser.next();
+            assertEquals(r.getLatitude(), read.getLatitude(), 0);
+            assertEquals(r.getLongitude(), read.getLongitude(), 0);
+            assertEquals(r.getRadius(), read.getRadius());
+            assertEquals(r.getText(), read.getText());
+            assertEquals(r.getLocationName(), read.getLocationName());
+            assertEquals(r.getList(), read.getList());
+        }
+        assertNull(parser.next());
+        assertEquals(0, parser.getSkipped());
+    }
+
+    @Test
+    public void parser_readsFilesWithoutThePlaceColumn() throws Exception {
+        String csv = "latitude,longitude,radius,text,items\n"
+                + "59.3293,18.0686,150,Buy milk,milk,bread\n";
+        ReminderCsv.Parser parser = new ReminderCsv.Parser(new StringReader(csv));
+
+        Reminder r = parser.next();
+        assertEquals("59.32930, 18.06860", r.getLocationName());
+        assertEquals(Arrays.asList("milk", "bread"), r.getList());
+        assertNull(parser.next());
+        assertEquals(0, parser.getSkipped());
+    }
+
+    @Test
+    public void parser_skipsCoordinatesAndRadiiOutOfRange() throws Exception {
+        String csv = ReminderCsv.HEADER + "\n"
+                + "NaN,18.0686,150,Buy milk\n"
+                + "59.3293,Infinity,150,Buy milk\n"
+                + "59.3293,18.0686,NaN,Buy milk\n"
+                + "59.3293,18.0686,5000000000,Buy milk\n"
+                + "59.3293,18.0686,2001,Buy milk\n"
+                + "59.3293,18.0686,2000,Buy milk\n";
+        ReminderCsv.Parser parser = new ReminderCsv.Parser(new StringReader(csv));
+
+        assertEquals(2000, parser.next().getRadius());
+        assertNull(parser.next());
+        assertEquals(5, parser.getSkipped());
+    }
+}
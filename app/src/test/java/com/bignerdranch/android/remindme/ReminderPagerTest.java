@@ -0,0 +1,88 @@
+package com.bignerdranch.android.remindme;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that ReminderPager only reads the window around the visible rows.
+ */
+public class ReminderPagerTest {
+
+    /**
+     * Counts the Reminders that are read.
+     */
+    private static class CountingSource implements ReminderPager.Source {
+        ArrayList<Reminder> reminders = new ArrayList<>();
+        int reads;
+        int read;
+
+        CountingSource(int count) {
+            for (int i = 0; i < count; i++) {
+                Reminder r = new Reminder(i + 1, 0, 0, 75);
+                r.setStrings("text " + i, "place " + i, new ArrayList<String>());
+                reminders.add(r);
+            }
+        }
+
+        @Override
+        public int getReminderCount() {
+            return reminders.size();
+        }
+
+        @Override
+        public List<Reminder> getReminders(int from, int to) {
+            reads++;
+            read += to - from;
+            return new ArrayList<>(reminders.subList(from, to));
+        }
+    }
+
+    @Test
+    public void get_readsAWindowNotTheWholeList() throws Exception {
+        CountingSource source = new CountingSource(10000);
+        ReminderPager pager = new ReminderPager(source);
+
+        assertEquals(5001, pager.get(5000).getId());
+        assertEquals(1, source.reads);
+        assertTrue(source.read <= 4 * ReminderPager.PREFETCH + 1);
+    }
+
+    @Test
+    public void setVisibleRange_readsAgainOnlyWhenTheMarginRunsOut() throws Exception {
+        CountingSource source = new CountingSource(1000);
+        ReminderPager pager = new ReminderPager(source);
+
+        pager.setVisibleRange(0, 9);
+        assertEquals(1, source.reads);
+
+        for (int first = 1; first <= ReminderPager.PREFETCH; first++) {
+            pager.setVisibleRange(first, first + 9);
+        }
+        assertEquals(1, source.reads);
+
+        for (int first = 0; first < 990; first++) {
+            pager.setVisibleRange(first, first + 9);
+            assertEquals(first + 1, pager.get(first).getId());
+        }
+        assertTrue("read " + source.reads + " times", source.reads < 100);
+    }
+
+    @Test
+    public void invalidate_readsTheChangedList() throws Exception {
+        CountingSource source = new CountingSource(100);
+        ReminderPager pager = new ReminderPager(source);
+
+        assertEquals(1, pager.get(0).getId());
+        source.reminders.remove(0);
+        pager.invalidate();
+
+        assertEquals(99, pager.size());
+        assertEquals(2, pager.get(0).getId());
+        assertEquals(-1, pager.indexInWindow(1));
+        assertEquals(0, pager.indexInWindow(2));
+    }
+}
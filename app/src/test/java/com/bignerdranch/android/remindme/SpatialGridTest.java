@@ -0,0 +1,207 @@
+package com.bignerdranch.android.remindme;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for SpatialGrid, including a benchmark of the
+ * lookup cost as the number of items grows.
+ */
+public class SpatialGridTest {
+
+    private static final double LATITUDE = 59.3293;
+    private static final double LONGITUDE = 18.0686;
+
+    private static final int HERE = 1;
+    private static final int NEXT_DOOR = 2;
+    private static final int FAR_AWAY = 3;
+
+    @Test
+    public void query_findsItemsInsideRadius() throws Exception {
+        SpatialGrid grid = new SpatialGrid();
+        grid.insert(HERE, LATITUDE, LONGITUDE);
+        grid.insert(NEXT_DOOR, LATITUDE + 0.0005, LONGITUDE);
+        grid.insert(FAR_AWAY, LATITUDE + 1, LONGITUDE);
+
+        IntList out = new IntList();
+        grid.query(LATITUDE, LONGITUDE, Store.MAX_DISTANCE, out);
+
+        assertTrue(contains(out, HERE));
+        assertTrue(contains(out, NEXT_DOOR));
+        assertFalse(contains(out, FAR_AWAY));
+    }
+
+    @Test
+    public void query_findsItemsAcrossCellBorders() throws Exception {
+        SpatialGrid grid = new SpatialGrid();
+        double border = Math.floor((LATITUDE + 90) / SpatialGrid.CELL_SIZE) * SpatialGrid.CELL_SIZE - 90;
+        grid.insert(HERE, border - 0.0001, LONGITUDE);
+
+        IntList out = new IntList();
+        grid.query(border + 0.0001, LONGITUDE, Store.MAX_DISTANCE, out);
+
+        assertEquals(1, out.size());
+    }
+
+    @Test
+    public void query_wrapsAroundDateLine() throws Exception {
+        SpatialGrid grid = new SpatialGrid();
+        grid.insert(HERE, 0, 179.9999);
+
+        IntList out = new IntList();
+        grid.query(0, -179.9999, Store.MAX_DISTANCE, out);
+
+        assertEquals(1, out.size());
+    }
+
+    @Test
+    public void remove_takesItemOutOfGrid() throws Exception {
+        SpatialGrid grid = new SpatialGrid();
+        grid.insert(HERE, LATITUDE, LONGITUDE);
+
+        assertTrue(grid.remove(HERE, LATITUDE, LONGITUDE));
+        assertFalse(grid.remove(HERE, LATITUDE, LONGITUDE));
+        assertEquals(0, grid.size());
+
+        IntList out = new IntList();
+        grid.query(LATITUDE, LONGITUDE, Store.MAX_DISTANCE, out);
+        assertTrue(out.isEmpty());
+    }
+
+    @Test
+    public void queryReaching_findsItemsByTheirOwnReach() throws Exception {
+        SpatialGrid grid = new SpatialGrid();
+        grid.insert(HERE, LATITUDE, LONGITUDE, 100);
+        grid.insert(NEXT_DOOR, LATITUDE + 0.01, LONGITUDE, 100);
+        grid.insert(FAR_AWAY, LATITUDE - 0.015, LONGITUDE + 0.015, 2500);
+
+        IntList out = new IntList();
+        grid.queryReaching(LATITUDE, LONGITUDE, out);
+
+        assertTrue(contains(out, HERE));
+        assertFalse(contains(out, NEXT_DOOR));
+        assertTrue(contains(out, FAR_AWAY));
+    }
+
+    /**
+     * A few items with a reach of 2 km among many with 75 m. A lookup visits the cells
+     * within 2 km, but should only collect the items of the cells that reach it.
+     */
+    @Test
+    public void benchmark_longReachDoesNotCollectNeighbours() throws Exception {
+        Random random = new Random(42);
+        SpatialGrid grid = new SpatialGrid();
+        int count = 100000;
+        int lookups = 20000;
+
+        for (int i = 0; i < count; i++) {
+            grid.insert(i, 55 + random.nextDouble(), 11 + random.nextDouble(), i % 1000 == 0 ? 2000 : 75);
+        }
+
+        IntList out = new IntList();
+        long candidates = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < lookups; i++) {
+            grid.queryReaching(55 + random.nextDouble(), 11 + random.nextDouble(), out);
+            candidates += out.size();
+            out.clear();
+        }
+
+        long nanos = (System.nanoTime() - start) / lookups;
+        System.out.println(String.format("%6d reminders, 1 in 1000 with 2 km: %5d ns/lookup, %.1f candidates/lookup",
+                count, nanos, (double) candidates / lookups));
+
+        // The cells within 2 km hold about 200 items.
+        assertTrue("neighbours of long reach are collected", candidates / lookups < 50);
+    }
+
+    /**
+     * Spreads the items over about ten by ten degrees, with the radii the user can pick,
+     * one in a hundred of them 1 or 2 km, and measures queryReaching, the lookup of
+     * Store.findAllNear. The candidates a lookup returns are what the Store has to check
+     * with the exact distance, the ones that are not hits should not grow with the
+     * number of items.
+     */
+    @Test
+    public void benchmark_lookupCostIsFlat() throws Exception {
+        int[] counts = {10, 100, 1000, 10000, 100000};
+        int lookups = 20000;
+        int[] radii = Reminder.RADIUS_CHOICES;
+
+        for (int count : counts) {
+            Random random = new Random(count);
+            SpatialGrid grid = new SpatialGrid();
+            double[] latitudes = new double[count];
+            double[] longitudes = new double[count];
+            int[] reaches = new int[count];
+
+            for (int i = 0; i < count; i++) {
+                latitudes[i] = 55 + random.nextDouble() * 10;
+                longitudes[i] = 11 + random.nextDouble() * 10;
+                reaches[i] = i % 100 == 0
+                        ? radii[radii.length - 1 - random.nextInt(2)]
+                        : radii[random.nextInt(radii.length - 2)];
+                grid.insert(i, latitudes[i], longitudes[i], reaches[i]);
+            }
+
+            double[] lookupLatitudes = new double[lookups];
+            double[] lookupLongitudes = new double[lookups];
+            for (int i = 0; i < lookups; i++) {
+                lookupLatitudes[i] = 55 + random.nextDouble() * 10;
+                lookupLongitudes[i] = 11 + random.nextDouble() * 10;
+            }
+
+            IntList out = new IntList();
+            long candidates = 0;
+            long start = System.nanoTime();
+
+            for (int i = 0; i < lookups; i++) {
+                grid.queryReaching(lookupLatitudes[i], lookupLongitudes[i], out);
+                candidates += out.size();
+                out.clear();
+            }
+
+            long nanos = (System.nanoTime() - start) / lookups;
+
+            long hits = 0;
+            for (int i = 0; i < lookups; i++) {
+                grid.queryReaching(lookupLatitudes[i], lookupLongitudes[i], out);
+                for (int k = 0; k < out.size(); k++) {
+                    int item = out.get(k);
+                    if (distance(lookupLatitudes[i], lookupLongitudes[i], latitudes[item], longitudes[item])
+                            <= reaches[item]) {
+                        hits++;
+                    }
+                }
+                out.clear();
+            }
+
+            System.out.println(String.format("%6d reminders: %5d ns/lookup, %.3f candidates/lookup, %.3f hits/lookup",
+                    count, nanos, (double) candidates / lookups, (double) hits / lookups));
+
+            assertTrue("candidates grow with the store", candidates - hits < lookups);
+        }
+    }
+
+    /**
+     * The equirectangular distance in meters, close enough at these distances.
+     */
+    private static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double x = Math.toRadians(longitude2 - longitude1) * Math.cos(Math.toRadians((latitude1 + latitude2) / 2));
+        double y = Math.toRadians(latitude2 - latitude1);
+        return Math.sqrt(x * x + y * y) * 6371000;
+    }
+
+    private static boolean contains(IntList list, int value) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,181 @@
+package com.bignerdranch.android.remindme;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the id and content indexes of Store.
+ */
+public class StoreTest {
+
+    private static Reminder reminder(double lat, double lon, int radius, String text) {
+        Reminder r = new Reminder(0, lat, lon, radius);
+        r.setStrings(text, "place", new ArrayList<String>());
+        return r;
+    }
+
+    @Test
+    public void add_rejectsTheSameContent() throws Exception {
+        Store store = new Store();
+
+        assertNotNull(store.add(reminder(59.3293, 18.0686, 75, "Buy milk")));
+        assertNull(store.add(reminder(59.329301, 18.068601, 75, "  buy   MILK ")));
+        assertNotNull(store.add(reminder(59.3293, 18.0686, 200, "Buy milk")));
+        assertNotNull(store.add(reminder(59.3293, 18.0686, 75, "Buy bread")));
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    public void add_rejectsAReminderThatIsStored() throws Exception {
+        Store store = new Store();
+        Reminder r = reminder(59.3293, 18.0686, 75, "Buy milk");
+
+        assertSame(r, store.add(r));
+        assertNull(store.add(r));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void add_acceptsTheContentOfARemovedOrChangedReminder() throws Exception {
+        Store store = new Store();
+        Reminder first = reminder(59.3293, 18.0686, 75, "Buy milk");
+        Reminder second = reminder(59.3293, 18.0686, 75, "Post letter");
+        store.add(first);
+        store.add(second);
+
+        store.remove(first);
+        assertNotNull(store.add(reminder(59.3293, 18.0686, 75, "Buy milk")));
+
+        store.setText(second, "Call home");
+        assertNotNull(store.add(reminder(59.3293, 18.0686, 75, "Post letter")));
+        assertNull(store.add(reminder(59.3293, 18.0686, 75, "call home")));
+    }
+
+    @Test
+    public void add_findsDuplicatesOfRestoredReminders() throws Exception {
+        Store store = new Store();
+        Reminder restored = new Reminder(42, 59.3293, 18.0686, 75);
+        restored.setStrings("Buy milk", "place", new ArrayList<String>());
+        store.restore(restored);
+
+        assertNull(store.add(reminder(59.3293, 18.0686, 75, "buy milk")));
+        assertTrue(store.add(reminder(59.3293, 18.0686, 75, "Post letter")).getId() > 42);
+    }
+
+    @Test
+    public void findById_findsEveryReminder() throws Exception {
+        Store store = new Store();
+        ArrayList<Reminder> added = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            added.add(store.add(reminder(59 + i * 0.001, 18, 75, "text " + i)));
+        }
+
+        for (Reminder r : added) {
+            assertSame(r, store.findById(r.getId()));
+        }
+        store.remove(added.get(10));
+        assertNull(store.findById(added.get(10).getId()));
+        assertEquals(2, store.findAllById(new long[] {
+                added.get(9).getId(), added.get(10).getId(), added.get(11).getId()}).size());
+    }
+
+    @Test
+    public void removeAllById_removesABatchAndKeepsTheOrder() throws Exception {
+        Store store = new Store();
+        long[] ids = new long[100];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = store.add(reminder(59 + i * 0.001, 18, 75, "text " + i)).getId();
+        }
+
+        long[] even = new long[50];
+        for (int i = 0; i < even.length; i++) {
+            even[i] = ids[i * 2];
+        }
+        assertEquals(50, store.removeAllById(even).size());
+        assertEquals(0, store.removeAllById(even).size());
+        assertEquals(50, store.size());
+
+        int i = 1;
+        for (Reminder r : store.getReminders()) {
+            assertEquals(ids[i], r.getId());
+            i += 2;
+        }
+    }
+
+    @Test
+    public void restore_replacesTheReminderWithTheSameId() throws Exception {
+        Store store = new Store();
+        Reminder old = store.add(reminder(59.3293, 18.0686, 75, "Buy milk"));
+        Reminder changed = new Reminder(old.getId(), 59.3293, 18.0686, 75);
+        changed.setStrings("Buy bread", "place", new ArrayList<String>());
+
+        store.restore(changed);
+
+        assertEquals(1, store.size());
+        assertSame(changed, store.findById(old.getId()));
+        assertNotNull(store.add(reminder(59.3293, 18.0686, 75, "Buy milk")));
+    }
+
+    @Test
+    public void addAll_skipsDuplicatesAlsoWithinTheBatch() throws Exception {
+        Store store = new Store();
+        store.add(reminder(59.3293, 18.0686, 75, "Buy milk"));
+
+        ArrayList<Reminder> batch = new ArrayList<>();
+        batch.add(reminder(59.3293, 18.0686, 75, "buy milk"));
+        batch.add(reminder(59.3293, 18.0686, 75, "Post letter"));
+        batch.add(reminder(59.3293, 18.0686, 75, "Post letter "));
+        batch.add(reminder(59.3300, 18.0686, 75, "Post letter"));
+
+        assertEquals(2, store.addAll(batch).size());
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    public void setRadius_changesWhereTheReminderIsFound() throws Exception {
+        Store store = new Store();
+        Reminder r = store.add(reminder(59.3293, 18.0686, 75, "Buy milk"));
+        double latitude = 59.3293 + 0.005;
+
+        assertTrue(store.findAllNear(latitude, 18.0686).isEmpty());
+
+        store.setRadius(r, 1000);
+        assertEquals(1000, r.getRadius());
+        assertTrue(store.findAllNear(latitude, 18.0686).contains(r));
+        assertNotNull(store.add(reminder(59.3293, 18.0686, 75, "Buy milk")));
+
+        store.setRadius(r, 20);
+        assertTrue(store.findAllNear(latitude, 18.0686).isEmpty());
+    }
+
+    @Test
+    public void add_decodesOnlyTheRemindersAtTheSamePlace() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ReminderCodec.encode(reminder(59.3293, 18.0686, 75, "Buy milk"), out);
+        int first = bytes.size();
+        ReminderCodec.encode(reminder(59.3400, 18.0686, 75, "Post letter"), out);
+        ByteBuffer data = ByteBuffer.wrap(bytes.toByteArray());
+
+        Store store = new Store();
+        Reminder here = ReminderCodec.decodeLazy(data, ReminderCodec.VERSION, first);
+        data.position(first);
+        Reminder there = ReminderCodec.decodeLazy(data, ReminderCodec.VERSION, bytes.size());
+        store.restore(here);
+        store.restore(there);
+
+        assertNotNull(store.add(reminder(59.3500, 18.0686, 75, "Buy milk")));
+        assertNotNull(here.getEncoded());
+        assertNotNull(there.getEncoded());
+
+        assertNull(store.add(reminder(59.3293, 18.0686, 75, "buy milk")));
+        assertNull(here.getEncoded());
+        assertNotNull(there.getEncoded());
+    }
+}